@@ -0,0 +1,30 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CacheClient按代数失效的命名空间配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache.generation")
+public class CacheGenerationProperties {
+    /**
+     * 按代数失效的key前缀，这些前缀下的key中带有当前代数，代数加一后整个前缀失效
+     */
+    private List<String> namespaces = new ArrayList<>();
+    /**
+     * 这些前缀下逻辑过期数据在redis中的过期时间，旧代数的key到期后自动删除
+     */
+    private Duration keyTtl = Duration.ofDays(1);
+    /**
+     * 本地缓存的代数每隔多久重新从redis读取一次，防止漏掉发布订阅消息
+     */
+    private Duration refreshInterval = Duration.ofSeconds(5);
+}
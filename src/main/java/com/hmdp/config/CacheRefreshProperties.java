@@ -0,0 +1,33 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CacheClient过期时间随机化和提前刷新配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache.refresh")
+public class CacheRefreshProperties {
+    /**
+     * 每个key前缀的刷新策略，没有配置的前缀使用固定过期时间、不提前刷新
+     */
+    private Map<String, Policy> policies = new HashMap<>();
+
+    @Data
+    public static class Policy {
+        /**
+         * 过期时间随机增加的比例，0.1表示在原过期时间上随机增加0~10%
+         */
+        private double jitter = 0;
+        /**
+         * 提前刷新系数，越大越早刷新，0表示不提前刷新
+         */
+        private double beta = 0;
+    }
+}
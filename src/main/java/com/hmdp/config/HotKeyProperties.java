@@ -0,0 +1,44 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 热点key探测配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache.hot-key")
+public class HotKeyProperties {
+    /**
+     * 是否开启热点key探测
+     */
+    private boolean enabled = false;
+    /**
+     * 采样比例，每N次访问记录一次，计数时乘以N
+     */
+    private int sampleRate = 10;
+    /**
+     * 统计窗口长度
+     */
+    private Duration window = Duration.ofSeconds(10);
+    /**
+     * 窗口被切分的段数，每过 window/slices 滑动一段
+     */
+    private int slices = 5;
+    /**
+     * 窗口内访问次数达到这个值的key被认为是热点key
+     */
+    private long threshold = 1000;
+    /**
+     * 最多同时记录的热点key数量
+     */
+    private int topK = 50;
+    /**
+     * 热点key在本地缓存的时间
+     */
+    private Duration replicaTtl = Duration.ofSeconds(5);
+}
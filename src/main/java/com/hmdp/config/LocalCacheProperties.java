@@ -0,0 +1,34 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CacheClient本地一级缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache.local")
+public class LocalCacheProperties {
+    /**
+     * 是否开启本地缓存
+     */
+    private boolean enabled = false;
+    /**
+     * 最多缓存的条数，maximumWeight大于0时以maximumWeight为准
+     */
+    private long maximumSize = 10000;
+    /**
+     * 最多缓存的字节数（按redis中json的长度估算），0表示不按字节数限制
+     */
+    private long maximumWeight = 0;
+    /**
+     * 每个key前缀的本地缓存时间，只有配置了的前缀才会进入本地缓存
+     */
+    private Map<String, Duration> ttl = new HashMap<>();
+}
@@ -20,7 +20,7 @@ public class MvcConfig implements WebMvcConfigurer {
                 "/user/code",
                 "/user/login",
                 "/shop/**",
-                "/voucher/**",
+                "/voucher/list/**",
                 "/shop-type/**",
                 "/upload/**",
                 "/blog/hot"
@@ -0,0 +1,140 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.CacheWarmupRunner;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.ShopGeoStore;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存监控
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private CacheWarmupRunner cacheWarmupRunner;
+    @Resource
+    private IShopTypeService shopTypeService;
+    @Resource
+    private ShopGeoStore shopGeoStore;
+
+    /**
+     * 查询本地缓存的命中统计
+     * @return 统计数据
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        return Result.ok(cacheClient.localCacheStats());
+    }
+
+    /**
+     * 失效整个命名空间，用于批量修改商铺等操作之后，不需要逐个删除key
+     * @param namespace 按代数失效的key前缀，例如 cache:shop:
+     * @return 新的代数
+     */
+    @PostMapping("/namespace/invalidate")
+    public Result invalidateNamespace(@RequestParam("namespace") String namespace) {
+        try {
+            return Result.ok(cacheClient.invalidateNamespace(namespace));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 查询布隆过滤器的拦截次数和误判率
+     * @return 每个key前缀的统计数据
+     */
+    @GetMapping("/bloom")
+    public Result bloomStats() {
+        return Result.ok(cacheClient.bloomFilterStats());
+    }
+
+    /**
+     * 查询缓存重建线程池的队列长度、拒绝次数和耗时
+     * @return 统计数据
+     */
+    @GetMapping("/rebuild")
+    public Result rebuildStats() {
+        return Result.ok(cacheRebuildExecutor.stats());
+    }
+
+    /**
+     * 查询当前的热点key，按访问次数从高到低排序
+     * @return 热点key和统计窗口内的访问次数
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.topKeys());
+    }
+
+    /**
+     * 查询启动预热每个任务的状态、处理条数和耗时
+     * @return 预热进度
+     */
+    @GetMapping("/warmup")
+    public Result warmup() {
+        return Result.ok(cacheWarmupRunner.status());
+    }
+
+    /**
+     * 修改商铺类型后通知所有节点重新加载商铺类型快照
+     * @return 新的版本号
+     */
+    @PostMapping("/shop-type/refresh")
+    public Result refreshShopTypes() {
+        return Result.ok(shopTypeService.markChanged());
+    }
+
+    /**
+     * 从数据库全量重建商铺GEO集合，已有重建任务在执行时返回失败
+     * @return 写入的商铺数量
+     */
+    @PostMapping("/shop-geo/rebuild")
+    public Result rebuildShopGeo() {
+        try {
+            return Result.ok(shopGeoStore.rebuild(count -> { }));
+        } catch (IllegalStateException e) {
+            return Result.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 对比数据库和商铺GEO集合
+     * @param repair 是否修复发现的不一致
+     * @return 缺失、位置不一致和多余的商铺数量
+     */
+    @PostMapping("/shop-geo/check")
+    public Result checkShopGeo(@RequestParam(value = "repair", defaultValue = "false") boolean repair) {
+        return Result.ok(shopGeoStore.check(repair));
+    }
+
+    /**
+     * 查询最近一次检查的结果
+     * @return 检查结果，没有检查过时为空
+     */
+    @GetMapping("/shop-geo/check")
+    public Result lastShopGeoCheck() {
+        return Result.ok(shopGeoStore.lastCheck());
+    }
+}
@@ -1,15 +1,17 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.NearbyQuery;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.RawJson;
+import com.hmdp.utils.ResultWriter;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 /**
  * <p>
@@ -29,11 +31,17 @@ public class ShopController {
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
-     * @return 商铺详情数据
+     * @param response 缓存中的json直接写入响应
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-        return Result.ok(shopService.quertById(id));
+    public void queryShopById(@PathVariable("id") Long id, HttpServletResponse response) throws IOException {
+        //缓存中的json原样写入响应，未命中或已过期时由缓存查询数据库
+        RawJson json = shopService.queryJsonById(id);
+        if (json == null) {
+            ResultWriter.fail(response, "店铺不存在");
+            return;
+        }
+        ResultWriter.ok(response, json);
     }
 
     /**
@@ -43,10 +51,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，同时写入布隆过滤器
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -77,6 +83,51 @@ public class ShopController {
         return shopService.queryShopByType(typeId, current,x,y);
     }
 
+    /**
+     * 滚动查询附近的商铺，每一页的开销和翻到第几页无关
+     * @param typeId 商铺类型
+     * @param x 经度
+     * @param y 纬度
+     * @param radius 查询半径（米），默认5公里
+     * @param minPrice 最低均价
+     * @param maxPrice 最高均价
+     * @param minScore 最低评分，乘10，例如45表示4.5分
+     * @param openNow 是否只查询正在营业的商铺
+     * @param sortBy 排序方式：distance（默认）、score、sold
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页的游标
+     */
+    @GetMapping("/of/type/nearby")
+    public Result queryShopNearby(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam("x") Double x,
+            @RequestParam("y") Double y,
+            @RequestParam(value = "radius", required = false) Double radius,
+            @RequestParam(value = "minPrice", required = false) Long minPrice,
+            @RequestParam(value = "maxPrice", required = false) Long maxPrice,
+            @RequestParam(value = "minScore", required = false) Integer minScore,
+            @RequestParam(value = "openNow", required = false) Boolean openNow,
+            @RequestParam(value = "sortBy", required = false) String sortBy,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        NearbyQuery.SortBy sort = NearbyQuery.SortBy.parse(sortBy);
+        if (sort == null) {
+            return Result.fail("不支持的排序方式");
+        }
+        NearbyQuery query = new NearbyQuery();
+        query.setTypeId(typeId);
+        query.setX(x);
+        query.setY(y);
+        query.setRadius(radius);
+        query.setMinPrice(minPrice);
+        query.setMaxPrice(maxPrice);
+        query.setMinScore(minScore);
+        query.setOpenNow(openNow);
+        query.setSortBy(sort);
+        query.setCursor(cursor);
+        return shopService.queryShopNearby(query);
+    }
+
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
@@ -88,11 +139,20 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 根据商铺名称或商圈关键字滚动查询商铺，用于输入联想，按相关度排序
+     * @param name 关键字
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页的游标
+     */
+    @GetMapping("/of/name/search")
+    public Result searchShopByName(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.searchShopByName(name, cursor);
     }
 }
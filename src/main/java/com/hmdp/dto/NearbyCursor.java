@@ -0,0 +1,38 @@
+package com.hmdp.dto;
+
+import cn.hutool.core.codec.Base64;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 附近商铺和按名称查询商铺的滚动游标：上一页最后一个商铺的排序值和id，对前端是不透明的字符串
+ */
+@Data
+@AllArgsConstructor
+public class NearbyCursor {
+    //排序值，按距离排序时是距离（米），按名称查询时是相关度
+    private double value;
+    private Long id;
+
+    public String encode() {
+        return Base64.encodeUrlSafe(value + ":" + id);
+    }
+
+    /**
+     * 解析游标
+     * @param cursor 前端传回的游标
+     * @return 格式不正确时返回null
+     */
+    public static NearbyCursor decode(String cursor) {
+        try {
+            String value = Base64.decodeStr(cursor);
+            int index = value.indexOf(':');
+            if (index < 0) {
+                return null;
+            }
+            return new NearbyCursor(Double.parseDouble(value.substring(0, index)), Long.valueOf(value.substring(index + 1)));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 附近商铺的查询条件，筛选条件为空时不筛选
+ */
+@Data
+public class NearbyQuery {
+    private Integer typeId;
+    //经度
+    private Double x;
+    //纬度
+    private Double y;
+    //查询半径，单位米
+    private Double radius;
+    //均价范围，单位元
+    private Long minPrice;
+    private Long maxPrice;
+    //最低评分，和商铺评分一样乘10，例如 45 表示4.5分
+    private Integer minScore;
+    //只查询当前正在营业的商铺
+    private Boolean openNow;
+    private SortBy sortBy = SortBy.DISTANCE;
+    //上一页返回的游标，第一页为空
+    private String cursor;
+
+    /**
+     * 排序方式：距离从近到远，评分、销量从高到低，相同时距离近的在前
+     */
+    public enum SortBy {
+        DISTANCE, SCORE, SOLD;
+
+        /**
+         * @param value 前端传入的排序方式，不区分大小写，为空时按距离排序
+         * @return 不支持的排序方式返回null
+         */
+        public static SortBy parse(String value) {
+            if (value == null || value.isEmpty()) {
+                return DISTANCE;
+            }
+            for (SortBy sortBy : values()) {
+                if (sortBy.name().equalsIgnoreCase(value)) {
+                    return sortBy;
+                }
+            }
+            return null;
+        }
+    }
+
+    //是否有筛选条件或者不按距离排序，这些查询需要本地位置索引
+    public boolean isFiltered() {
+        return minPrice != null || maxPrice != null || minScore != null
+                || Boolean.TRUE.equals(openNow) || sortBy != SortBy.DISTANCE;
+    }
+}
@@ -0,0 +1,67 @@
+package com.hmdp.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 缓存失效消息，和业务数据在同一个事务中写入，由后台线程删除对应的缓存
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("tb_cache_outbox")
+public class CacheOutbox implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 等待第一次删除
+     */
+    public static final int STATUS_PENDING = 0;
+    /**
+     * 已经删除一次，等待延迟双删
+     */
+    public static final int STATUS_DELETED = 1;
+
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 要删除的缓存key
+     */
+    private String cacheKey;
+
+    /**
+     * 状态，0：等待删除；1：已删除一次，等待延迟双删
+     */
+    private Integer status;
+
+    /**
+     * 删除失败的次数
+     */
+    private Integer retryCount;
+
+    /**
+     * 下一次处理的时间
+     */
+    private LocalDateTime nextTime;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+
+}
@@ -2,6 +2,11 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 /**
  * <p>
@@ -13,4 +18,21 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface ShopMapper extends BaseMapper<Shop> {
 
+    /**
+     * 流式读取所有商铺的id、类型、坐标和附近商铺筛选用到的属性，MySQL驱动逐行返回，不会一次性加载到内存
+     * @param handler 每读取一行调用一次
+     */
+    @Select("select id, type_id, x, y, avg_price, score, sold, open_hours from tb_shop")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Shop.class)
+    void scanLocations(ResultHandler<Shop> handler);
+
+    /**
+     * 流式读取所有商铺的id、名称和商圈，用于加载名称索引
+     * @param handler 每读取一行调用一次
+     */
+    @Select("select id, name, area from tb_shop")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Shop.class)
+    void scanNames(ResultHandler<Shop> handler);
 }
@@ -0,0 +1,18 @@
+package com.hmdp.service;
+
+import com.hmdp.entity.CacheOutbox;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * <p>
+ *  缓存失效消息服务类
+ * </p>
+ */
+public interface ICacheOutboxService extends IService<CacheOutbox> {
+
+    /**
+     * 在当前事务中记录需要删除的缓存key，事务提交后由后台线程删除redis和所有节点的本地缓存
+     * @param keys 缓存key
+     */
+    void record(String... keys);
+}
@@ -1,7 +1,9 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.NearbyQuery;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
+import com.hmdp.utils.RawJson;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 /**
@@ -17,9 +19,23 @@ public interface IShopService extends IService<Shop> {
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
-     * @return 商铺详情数据
+     * @return 商铺详情数据，不存在时返回null
      */
-    Object quertById(Long id);
+    Shop queryById(Long id);
+
+    /**
+     * 根据id查询缓存中商铺信息的json，用于直接写入响应
+     * @param id 商铺id
+     * @return 商铺详情的json，不存在时返回null
+     */
+    RawJson queryJsonById(Long id);
+
+    /**
+     * 新增商铺信息
+     * @param shop 商铺数据
+     * @return 商铺id
+     */
+    Result saveShop(Shop shop);
 
     /**
      * 修改商铺信息
@@ -35,4 +51,27 @@ public interface IShopService extends IService<Shop> {
      * @return 商铺列表
      */
     Result queryShopByType(Integer typeId, Integer current,Double x, Double y);
+
+    /**
+     * 滚动查询附近的商铺，可以按均价、评分、是否营业筛选，按距离、评分或销量排序
+     * @param query 查询条件和上一页返回的游标
+     * @return 商铺列表和下一页的游标
+     */
+    Result queryShopNearby(NearbyQuery query);
+
+    /**
+     * 根据商铺名称关键字分页查询商铺，开启名称索引时按相关度排序
+     * @param name 商铺名称关键字，为空时查询所有商铺
+     * @param current 页码
+     * @return 商铺列表
+     */
+    Result queryShopByName(String name, Integer current);
+
+    /**
+     * 根据商铺名称或商圈关键字滚动查询商铺，按相关度排序，需要开启名称索引
+     * @param name 关键字，支持前缀和中间匹配；只有一个字符时只匹配名称前缀
+     * @param cursor 上一页返回的游标，第一页为空
+     * @return 商铺列表和下一页的游标
+     */
+    Result searchShopByName(String name, String cursor);
 }
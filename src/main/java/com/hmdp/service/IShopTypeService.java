@@ -20,4 +20,16 @@ public interface IShopTypeService extends IService<ShopType> {
      * @return 商铺类型列表
      */
     List<ShopType> queryAllList();
+
+    /**
+     * 查询所有商铺类型序列化后的json数组，用于直接写入响应
+     * @return 商铺类型列表的json
+     */
+    byte[] queryAllJson();
+
+    /**
+     * 修改商铺类型后调用，递增版本号并通知所有节点重新加载
+     * @return 新的版本号
+     */
+    long markChanged();
 }
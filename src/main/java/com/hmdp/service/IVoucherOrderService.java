@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -22,4 +24,10 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
     Result secKillVoucher(Long voucherId) throws InterruptedException;
 
     void createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 批量创建订单：批内去重，按优惠券聚合扣减库存，批量写入订单
+     * @param voucherOrders 订单列表
+     */
+    void createVoucherOrders(List<VoucherOrder> voucherOrders);
 }
@@ -17,4 +17,12 @@ public interface IVoucherService extends IService<Voucher> {
     Result queryVoucherOfShop(Long shopId);
 
     void addSeckillVoucher(Voucher voucher);
+
+    /**
+     * 补充秒杀券库存，同时清除售罄标记
+     * @param voucherId 优惠券id
+     * @param count 补充的库存数量
+     * @return 无
+     */
+    Result addSeckillStock(Long voucherId, Integer count);
 }
@@ -15,6 +15,7 @@ import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -23,13 +24,19 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
 import static com.hmdp.utils.RedisConstants.FEED_KEY;
 
 /**
@@ -48,6 +55,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private IUserService userService;
     @Resource
     private IFollowService followService;
+    @Resource
+    private CacheClient cacheClient;
     /**
      * 查询最热博客
      * @param current
@@ -125,14 +134,16 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             //1、数据库点赞数+1
             boolean success = update().setSql("liked = liked + 1").eq("id", id).update();
             if(success){
-                //2、保存用户到redis
+                //2、保存用户到redis，点赞数变化后直接删除blog缓存，点赞是高频写入，不再每次写入失效消息表
                 stringRedisTemplate.opsForZSet().add(key, userId.toString(),System.currentTimeMillis());
+                cacheClient.delete(CACHE_BLOG_KEY + id);
             }
         }else{
             //2、1已点赞则取消点赞
             boolean success = update().setSql("liked = liked - 1").eq("id", id).update();
             if(success){
                 stringRedisTemplate.opsForZSet().remove(key, userId.toString());
+                cacheClient.delete(CACHE_BLOG_KEY + id);
             }
         }
         return Result.ok();
@@ -170,14 +181,17 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 offsetFinal = 1;//最终要统计最后一个时间戳出现的次数
             }
         }
-        //4、根据id查询blog
-        String strs = StrUtil.join(",", ids);
-        List<Blog> blogList = query().in("id", ids).last("order by FIELD (id," + strs + ")").list();
-        for (Blog blog : blogList){
+        //4、根据id批量从缓存查询blog，结果和ids顺序一致
+        List<Blog> cached = cacheClient.getMany(CACHE_BLOG_KEY, ids, Blog.class, this::queryBlogMap, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        List<Blog> blogList = new ArrayList<>(cached.size());
+        for (Blog cachedBlog : cached){
+            //缓存返回的对象可能是共享的，复制后再填充用户信息
+            Blog blog = BeanUtil.copyProperties(cachedBlog, Blog.class);
             //查询blog有关用户
             queryBlogUser(blog);
             //查询当前用户是否点赞
             isBlogLike(blog);
+            blogList.add(blog);
         }
         //5、封装并返回
         ScollResult scollResult = new ScollResult();
@@ -243,6 +257,11 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(userDTOS);
     }
 
+    //根据一批id查询blog，供缓存批量查询使用
+    private Map<Long, Blog> queryBlogMap(Collection<Long> ids){
+        return listByIds(ids).stream().collect(Collectors.toMap(Blog::getId, Function.identity()));
+    }
+
     private void queryBlogUser(Blog  blog) {
         Long userId = blog.getUserId();
         User user = userService.getById(userId);
@@ -0,0 +1,155 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import com.hmdp.service.ICacheOutboxService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *  缓存失效消息服务实现类
+ *  业务数据修改时在同一个事务中写入tb_cache_outbox，事务提交后立即触发一次删除，
+ *  后台线程定时扫描没有处理完的消息：批量删除redis和所有节点的本地缓存，失败的按退避时间重试，
+ *  删除成功后等待一段时间再删除一次（延迟双删），避免删除期间并发读把旧数据写回缓存
+ * </p>
+ */
+@Slf4j
+@Service
+public class CacheOutboxServiceImpl extends ServiceImpl<CacheOutboxMapper, CacheOutbox> implements ICacheOutboxService {
+
+    //重试的最长间隔
+    private static final long MAX_BACKOFF_MS = 60000;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    //每次处理的消息数量
+    @Value("${hmdp.cache.outbox.batch-size:200}")
+    private int batchSize;
+    //扫描间隔
+    @Value("${hmdp.cache.outbox.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+    //第一次删除后隔多久再删除一次
+    @Value("${hmdp.cache.outbox.second-delete-delay-ms:1000}")
+    private long secondDeleteDelayMs;
+
+    private ScheduledExecutorService relayExecutor;
+    //同一时间只有一个线程处理，其他节点同时处理时重复删除没有影响
+    private final ReentrantLock relayLock = new ReentrantLock();
+
+    @PostConstruct
+    private void init() {
+        relayExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relayExecutor.scheduleWithFixedDelay(this::relay, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        relayExecutor.shutdownNow();
+    }
+
+    @Override
+    public void record(String... keys) {
+        //1、写入失效消息，和业务数据在同一个事务中
+        LocalDateTime now = LocalDateTime.now();
+        List<CacheOutbox> messages = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            messages.add(new CacheOutbox().setCacheKey(key).setStatus(CacheOutbox.STATUS_PENDING)
+                    .setRetryCount(0).setNextTime(now).setCreateTime(now));
+        }
+        saveBatch(messages);
+        //2、事务提交后立即处理，不用等下一次扫描
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    relayExecutor.execute(CacheOutboxServiceImpl.this::relay);
+                }
+            });
+        } else {
+            relayExecutor.execute(this::relay);
+        }
+    }
+
+    /**
+     * 处理到期的失效消息，直到没有到期的消息为止
+     */
+    private void relay() {
+        if (!relayLock.tryLock()) {
+            return;
+        }
+        try {
+            while (true) {
+                List<CacheOutbox> messages = query().le("next_time", LocalDateTime.now())
+                        .orderByAsc("id").last("limit " + batchSize).list();
+                if (messages.isEmpty()) {
+                    return;
+                }
+                deleteCaches(messages);
+                if (messages.size() < batchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("处理缓存失效消息失败", e);
+        } finally {
+            relayLock.unlock();
+        }
+    }
+
+    private void deleteCaches(List<CacheOutbox> messages) {
+        List<Long> ids = messages.stream().map(CacheOutbox::getId).collect(Collectors.toList());
+        Set<String> keys = messages.stream().map(CacheOutbox::getCacheKey).collect(Collectors.toSet());
+        try {
+            //1、一次批量删除redis和本地缓存
+            cacheClient.delete(keys);
+        } catch (Exception e) {
+            //2、删除失败，按失败次数退避后重试
+            log.warn("删除缓存失败，稍后重试, keys={}", keys, e);
+            for (CacheOutbox message : messages) {
+                int retryCount = message.getRetryCount() + 1;
+                long backoff = Math.min(MAX_BACKOFF_MS, 1000L << Math.min(retryCount, 16));
+                update().set("retry_count", retryCount)
+                        .set("next_time", LocalDateTime.now().plus(backoff, ChronoUnit.MILLIS))
+                        .eq("id", message.getId()).update();
+            }
+            return;
+        }
+        //3、第一次删除成功的消息等待延迟双删，第二次删除成功的消息直接移除
+        List<Long> firstDeleted = messages.stream().filter(message -> message.getStatus() == CacheOutbox.STATUS_PENDING)
+                .map(CacheOutbox::getId).collect(Collectors.toList());
+        if (!firstDeleted.isEmpty()) {
+            update().set("status", CacheOutbox.STATUS_DELETED).set("retry_count", 0)
+                    .set("next_time", LocalDateTime.now().plus(secondDeleteDelayMs, ChronoUnit.MILLIS))
+                    .in("id", firstDeleted).update();
+        }
+        ids.removeAll(firstDeleted);
+        if (!ids.isEmpty()) {
+            removeByIds(ids);
+        }
+    }
+}
@@ -2,33 +2,48 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.NearbyCursor;
+import com.hmdp.dto.NearbyQuery;
+import com.hmdp.dto.NearbyResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.RedisData;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.ICacheOutboxService;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.GeoGridIndex;
+import com.hmdp.utils.NgramIndex;
+import com.hmdp.utils.RawJson;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopGeoStore;
+import com.hmdp.utils.ShopNameIndex;
 import com.hmdp.utils.SystemConstants;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.geo.Distance;
-import org.springframework.data.geo.GeoResult;
-import org.springframework.data.geo.GeoResults;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -44,21 +59,62 @@ import static com.hmdp.utils.RedisConstants.*;
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
-
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private ShopGeoStore shopGeoStore;
+    @Resource
+    private ShopNameIndex shopNameIndex;
 
     private CacheClient cacheClient;
     public ShopServiceImpl(CacheClient cacheClient) {
         this.cacheClient = cacheClient;
     }
 
+    //是否为商铺缓存开启布隆过滤器
+    @Value("${hmdp.cache.bloom.enabled:false}")
+    private boolean bloomEnabled;
+    //布隆过滤器预计的商铺数量
+    @Value("${hmdp.cache.bloom.expected-insertions:100000}")
+    private long bloomExpectedInsertions;
+    //布隆过滤器期望的误判率
+    @Value("${hmdp.cache.bloom.fpp:0.01}")
+    private double bloomFpp;
+    //布隆过滤器从数据库重建的间隔，补上其他节点新增但本节点没有收到消息的商铺
+    @Value("${hmdp.cache.bloom.rebuild-interval-ms:600000}")
+    private long bloomRebuildIntervalMs;
+    //启动时每次从数据库读取的商铺id数量
+    private static final int BLOOM_LOAD_BATCH = 1000;
+
+    @PostConstruct
+    private void init(){
+        if(!bloomEnabled){
+            return;
+        }
+        //按id分批加载所有商铺id到布隆过滤器
+        cacheClient.registerBloomFilter(CACHE_SHOP_KEY, bloomExpectedInsertions, bloomFpp, bloomRebuildIntervalMs, sink -> {
+            long lastId = 0;
+            while (true) {
+                List<Object> ids = listObjs(query().select("id").gt("id", lastId)
+                        .orderByAsc("id").last("limit " + BLOOM_LOAD_BATCH));
+                ids.forEach(sink);
+                if(ids.size() < BLOOM_LOAD_BATCH){
+                    return;
+                }
+                lastId = Long.parseLong(ids.get(ids.size() - 1).toString());
+            }
+        });
+    }
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
      * @return 商铺详情数据
      */
     @Override
-    public Object quertById(Long id) {
+    public Shop queryById(Long id) {
        // 缓存穿透
 //        Shop shop = cacheClient.getPathThrough
 //                (CACHE_SHOP_KEY,id,Shop.class,this::getById,CACHE_SHOP_TTL,TimeUnit.MINUTES);
@@ -70,11 +126,13 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //        }
 
         //逻辑过期解决缓存击穿
-         Shop shop = cacheClient.getWithLogicalExpire(CACHE_SHOP_KEY,id,Shop.class,this::getById,CACHE_SHOP_TTL,TimeUnit.MINUTES);
-        if(shop == null){
-            return Result.fail("店铺不存在");
-        }
-        return shop;
+        return cacheClient.getWithLogicalExpire(CACHE_SHOP_KEY,id,Shop.class,this::getById,CACHE_SHOP_TTL,TimeUnit.MINUTES);
+    }
+
+    @Override
+    public RawJson queryJsonById(Long id) {
+        //缓存中的json直接返回，无法直接返回时和queryById一样处理过期和重建
+        return cacheClient.getJsonWithLogicalExpire(CACHE_SHOP_KEY,id,Shop.class,this::getById,CACHE_SHOP_TTL,TimeUnit.MINUTES);
     }
 
     /**
@@ -87,54 +145,309 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
         //1、判断是否需要根据坐标查询
         if(x == null || y == null){
-            //此时不需要坐标查询，直接按照数据库进行查询
-            Page<Shop> page = query().eq("type_id", typeId).page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-            return Result.ok(page.getRecords());
+            //此时不需要坐标查询，数据库只查询这一页的id，商铺详情批量从缓存中获取
+            Page<Shop> page = query().select("id").eq("type_id", typeId).page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+            List<Long> ids = page.getRecords().stream().map(Shop::getId).collect(Collectors.toList());
+            return Result.ok(cacheClient.getMany(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES));
         }
         //2、计算分页参数
         int start = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;//起始索引
         int end = current* SystemConstants.DEFAULT_PAGE_SIZE;//终止索引
-        //3、查询redis，按照距离排序，分页。结果，shopid distance
-        String key = SHOP_GEO_KEY + typeId;// geosearch key bylonlat x y byradius 5000 withdistance
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
-                key, //key
-                GeoReference.fromCoordinate(x, y),//坐标(经纬度)
-                new Distance(5000),//distance
-                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end));
-        if(results == null){
-            return Result.ok(Collections.emptyList());
-        }
-        //4、解析出id
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if(list.size() <= start){
-            return Result.ok(Collections.emptyList());
-        }
-        List<Long> ids = new ArrayList();
-        Map<String,Distance> distanceMap = new HashMap<>();
-        list.stream().skip(start).forEach(result ->{
-            //获取店铺id
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            //获取距离
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr,distance);
-        });
-        //5、根据id查询shop
-        String strs = StrUtil.join(",", ids);
-        List<Shop> shopList = query().in("id", ids).last("order by FIELD (id," + strs + ")").list();
-        //将店铺距离进行封装
-        for (Shop shop : shopList){
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+        //3、开启了本地位置索引时直接在JVM内查询前end个商铺
+        if(shopGeoIndex.isEnabled()){
+            GeoGridIndex.Hits hits = shopGeoIndex.search(typeId.longValue(), x, y, SystemConstants.NEARBY_RADIUS, -1, Long.MIN_VALUE, end);
+            return Result.ok(toNearbyShops(hits, start, hits.size()));
+        }
+        //4、附近的商铺按距离排序后保存在临时zset中，每一页只按排名读取这一页，保存的数量覆盖到这一页为止
+        String nearbyKey = searchNearby(typeId, x, y, SystemConstants.NEARBY_RADIUS, nearbyLimit(end));
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeWithScores(nearbyKey, start, end - 1);
+        //5、返回
+        return Result.ok(toNearbyShops(tuples));
+    }
+
+    /**
+     * 滚动查询附近的商铺，游标记录上一页最后一个商铺的排序值和id
+     * 开启本地位置索引时筛选和排序都在索引内完成；否则只支持按距离排序，从redis GEO查询
+     * @param query 查询条件和上一页返回的游标
+     * @return 商铺列表和下一页的游标，没有更多数据时游标为空
+     */
+    @Override
+    public Result queryShopNearby(NearbyQuery query) {
+        //1、校验查询条件，解析游标
+        if(query.getRadius() == null){
+            query.setRadius(SystemConstants.NEARBY_RADIUS);
+        }
+        if(query.getRadius() <= 0 || query.getRadius() > SystemConstants.NEARBY_MAX_RADIUS){
+            return Result.fail("查询半径超出范围");
+        }
+        NearbyCursor last = null;
+        if(StrUtil.isNotBlank(query.getCursor())){
+            last = NearbyCursor.decode(query.getCursor());
+            if(last == null){
+                return Result.fail("无效的游标");
+            }
+        }
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        //2、开启了本地位置索引时直接查询排在游标之后的商铺，多查一条判断是否还有下一页
+        if(shopGeoIndex.isEnabled()){
+            GeoGridIndex.Hits hits = last == null
+                    ? shopGeoIndex.search(query, Double.NEGATIVE_INFINITY, Long.MIN_VALUE, size + 1)
+                    : shopGeoIndex.search(query, last.getValue(), last.getId(), size + 1);
+            String next = hits.size() > size ? new NearbyCursor(hits.key(size - 1), hits.id(size - 1)).encode() : null;
+            return Result.ok(new NearbyResult(toNearbyShops(hits, 0, Math.min(size, hits.size())), next));
+        }
+        if(query.isFiltered()){
+            return Result.fail("未开启商铺位置索引，只支持按距离查询");
+        }
+        //3、找到上一页最后一个商铺在临时zset中的排名，多查一条判断是否还有下一页
+        ZSetOperations<String, String> zSet = stringRedisTemplate.opsForZSet();
+        Set<ZSetOperations.TypedTuple<String>> tuples;
+        long limit = SystemConstants.NEARBY_MAX_RESULTS;
+        while (true) {
+            String nearbyKey = searchNearby(query.getTypeId(), query.getX(), query.getY(), query.getRadius(), limit);
+            if(last == null){
+                tuples = zSet.rangeWithScores(nearbyKey, 0, size);
+            }else{
+                Long rank = zSet.rank(nearbyKey, last.getId().toString());
+                //3、1商铺已经不在结果中（临时结果过期后位置变化），从 (距离, id) 之后继续
+                tuples = rank != null
+                        ? zSet.rangeWithScores(nearbyKey, rank + 1, rank + 1 + size)
+                        : rangeAfter(nearbyKey, last.getValue(), last.getId().toString(), size + 1);
+            }
+            //3、2不够判断下一页并且临时zset已经存满，说明后面还有没保存的商铺，保存数量加倍后重新查询
+            if((tuples == null || tuples.size() <= size) && zSet.size(nearbyKey) >= limit){
+                limit *= 2;
+                continue;
+            }
+            break;
+        }
+        if(tuples == null || tuples.isEmpty()){
+            return Result.ok(new NearbyResult(Collections.emptyList(), null));
+        }
+        //4、超过一页说明还有下一页，游标取这一页最后一个商铺
+        List<ZSetOperations.TypedTuple<String>> page = new ArrayList<>(tuples);
+        String next = null;
+        if(page.size() > size){
+            page = page.subList(0, size);
+            ZSetOperations.TypedTuple<String> tail = page.get(size - 1);
+            next = new NearbyCursor(tail.getScore(), Long.valueOf(tail.getValue())).encode();
+        }
+        return Result.ok(new NearbyResult(toNearbyShops(page), next));
+    }
+
+    /**
+     * 根据商铺名称关键字分页查询商铺
+     * @param name 商铺名称关键字，为空时查询所有商铺
+     * @param current 页码
+     * @return 商铺列表
+     */
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        //1、没有关键字或者没有开启名称索引时查询数据库
+        if(StrUtil.isBlank(name) || !shopNameIndex.isEnabled()){
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        //2、在名称索引中查询前end个商铺，返回这一页
+        int start = (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        int end = current * SystemConstants.MAX_PAGE_SIZE;
+        NgramIndex.Hits hits = shopNameIndex.search(name, -1, Long.MIN_VALUE, end);
+        List<Long> ids = new ArrayList<>();
+        for (int i = start; i < hits.size(); i++) {
+            ids.add(hits.id(i));
+        }
+        return Result.ok(cacheClient.getMany(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES));
+    }
+
+    /**
+     * 根据商铺名称或商圈关键字滚动查询商铺，游标记录上一页最后一个商铺的相关度和id
+     * @param name 关键字
+     * @param cursor 上一页返回的游标，第一页为空
+     * @return 商铺列表和下一页的游标，没有更多数据时游标为空
+     */
+    @Override
+    public Result searchShopByName(String name, String cursor) {
+        if(!shopNameIndex.isEnabled()){
+            return Result.fail("未开启商铺名称索引");
+        }
+        if(StrUtil.isBlank(name)){
+            return Result.ok(new NearbyResult(Collections.emptyList(), null));
+        }
+        //1、解析游标
+        NearbyCursor last = null;
+        if(StrUtil.isNotBlank(cursor)){
+            last = NearbyCursor.decode(cursor);
+            if(last == null){
+                return Result.fail("无效的游标");
+            }
+        }
+        //2、查询排在游标之后的商铺，多查一条判断是否还有下一页
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        NgramIndex.Hits hits = last == null
+                ? shopNameIndex.search(name, -1, Long.MIN_VALUE, size + 1)
+                : shopNameIndex.search(name, last.getValue(), last.getId(), size + 1);
+        int count = Math.min(size, hits.size());
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(hits.id(i));
+        }
+        String next = hits.size() > size ? new NearbyCursor(hits.key(size - 1), hits.id(size - 1)).encode() : null;
+        //3、商铺详情批量从缓存中获取
+        List<Shop> shops = ids.isEmpty() ? Collections.emptyList()
+                : cacheClient.getMany(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        return Result.ok(new NearbyResult(shops, next));
+    }
+
+    /**
+     * 排在 (score, member) 之后的元素：分数相同的元素在zset中按成员的字典序排列，
+     * 多取分数等于score的元素数量，再去掉其中成员不大于member的
+     */
+    private Set<ZSetOperations.TypedTuple<String>> rangeAfter(String key, double score, String member, int count) {
+        ZSetOperations<String, String> zSet = stringRedisTemplate.opsForZSet();
+        Long ties = zSet.count(key, score, score);
+        Set<ZSetOperations.TypedTuple<String>> tuples = zSet.rangeByScoreWithScores(
+                key, score, Double.POSITIVE_INFINITY, 0, count + (ties == null ? 0 : ties));
+        if(tuples == null){
+            return null;
+        }
+        Set<ZSetOperations.TypedTuple<String>> after = new LinkedHashSet<>();
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if(after.size() == count){
+                break;
+            }
+            if(tuple.getScore() == score && tuple.getValue().compareTo(member) <= 0){
+                continue;
+            }
+            after.add(tuple);
+        }
+        return after;
+    }
+
+    /**
+     * 把附近一定范围内的商铺按距离保存到临时zset（GEOSEARCHSTORE STOREDIST），分数是距离（米），最多保存limit个
+     * 坐标按NEARBY_COORDINATE_SCALE取整到网格中心，同一个网格内的查询在有效期内共用一份结果，
+     * 之后的每一页只需要按排名读取，和翻到第几页无关；
+     * 保存数量是key的一部分，zset中的商铺数量等于limit时说明范围内还有更多商铺，需要用更大的limit重新查询
+     * @param limit 最多保存的商铺数量，由nearbyLimit计算，不同的页共用几份固定大小的结果
+     * @return 临时zset的key
+     */
+    private String searchNearby(Integer typeId, double x, double y, double radius, long limit) {
+        x = NumberUtil.round(x, SystemConstants.NEARBY_COORDINATE_SCALE).doubleValue();
+        y = NumberUtil.round(y, SystemConstants.NEARBY_COORDINATE_SCALE).doubleValue();
+        String nearbyKey = SHOP_NEARBY_KEY + typeId + ":" + x + ":" + y + ":" + radius + ":" + limit;
+        //1、续期成功说明结果还在
+        if(BooleanUtil.isTrue(stringRedisTemplate.expire(nearbyKey, SHOP_NEARBY_TTL, TimeUnit.SECONDS))){
+            return nearbyKey;
+        }
+        //2、不存在时重新计算，并发计算时结果相同，互相覆盖没有影响
+        stringRedisTemplate.opsForGeo().searchAndStore(
+                SHOP_GEO_KEY + typeId,
+                nearbyKey,
+                GeoReference.fromCoordinate(x, y),
+                new Distance(radius),
+                RedisGeoCommands.GeoSearchStoreCommandArgs.newGeoSearchStoreArgs()
+                        .storeDistance().sortAscending().limit(limit));
+        stringRedisTemplate.expire(nearbyKey, SHOP_NEARBY_TTL, TimeUnit.SECONDS);
+        return nearbyKey;
+    }
+
+    //保存前count个商铺需要的数量：NEARBY_MAX_RESULTS每次加倍，翻页很深时才会保存更多
+    private static long nearbyLimit(long count) {
+        long limit = SystemConstants.NEARBY_MAX_RESULTS;
+        while (limit < count) {
+            limit *= 2;
+        }
+        return limit;
+    }
+
+    //临时zset中的id和距离
+    private List<Shop> toNearbyShops(Collection<ZSetOperations.TypedTuple<String>> tuples) {
+        if(tuples == null || tuples.isEmpty()){
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(tuples.size());
+        Map<Long, Double> distanceMap = new HashMap<>();
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            Long id = Long.valueOf(tuple.getValue());
+            ids.add(id);
+            distanceMap.put(id, tuple.getScore());
+        }
+        return toNearbyShops(ids, distanceMap);
+    }
+
+    //本地位置索引查询结果中 [from, to) 的id和距离
+    private List<Shop> toNearbyShops(GeoGridIndex.Hits hits, int from, int to) {
+        if(from >= to){
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(to - from);
+        Map<Long, Double> distanceMap = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            ids.add(hits.id(i));
+            distanceMap.put(hits.id(i), hits.distance(i));
+        }
+        return toNearbyShops(ids, distanceMap);
+    }
+
+    //根据id和距离批量从缓存查询商铺，结果和ids顺序一致
+    private List<Shop> toNearbyShops(List<Long> ids, Map<Long, Double> distanceMap) {
+        List<Shop> cached = cacheClient.getMany(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        //将店铺距离进行封装，缓存返回的是共享对象，需要复制后再修改
+        List<Shop> shopList = new ArrayList<>(cached.size());
+        for (Shop shop : cached){
+            Shop copy = BeanUtil.copyProperties(shop, Shop.class);
+            copy.setDistance(distanceMap.get(shop.getId()));
+            shopList.add(copy);
         }
-        //6、返回
-        return Result.ok(shopList);
+        return shopList;
+    }
+
+    //在事务提交后执行，没有事务时立即执行
+    private static void afterCommit(Runnable task){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
 
+    //根据一批id查询商铺，供缓存批量查询使用
+    private Map<Long, Shop> queryShopMap(Collection<Long> ids){
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+    }
+
+    /**
+     * 新增商铺信息
+     * @param shop 商铺数据
+     * @return 商铺id
+     */
+    @Override
+    public Result saveShop(Shop shop) {
+        //1、写入数据库
+        save(shop);
+        //2、写入布隆过滤器，否则新商铺会被当作不存在
+        cacheClient.addToBloomFilter(CACHE_SHOP_KEY, shop.getId());
+        //3、写入redis GEO，通知所有节点更新本地位置索引和名称索引
+        shopGeoStore.sync(shop.getId());
+        shopGeoIndex.publishChange(shop.getId());
+        shopNameIndex.publishChange(shop.getId());
+        //4、返回店铺id
+        return Result.ok(shop.getId());
     }
 
     /*     * 更新商铺信息
       @param shop 更新的商铺信息
       @return 更新结果*/
     @Override
+    @Transactional
     public Result updateByShop(Shop shop) {
         //1、先修改商铺信息
         Long id = shop.getId();
@@ -142,9 +455,15 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return Result.fail("店铺id不能为空");
         }
         updateById(shop);
-        //2、删除redis中的商铺信息
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
-        //3、返回结果
+        //2、在同一个事务中记录缓存失效消息，提交后删除redis和所有节点的本地缓存，失败会重试
+        cacheOutboxService.record(CACHE_SHOP_KEY + id);
+        //3、事务提交后更新redis GEO并通知所有节点更新本地位置索引和名称索引，以数据库为准
+        afterCommit(() -> {
+            shopGeoStore.sync(id);
+            shopGeoIndex.publishChange(id);
+            shopNameIndex.publishChange(id);
+        });
+        //4、返回结果
         return Result.ok();
     }
 
@@ -1,69 +1,168 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.json.JSONUtil;
-import com.hmdp.dto.Result;
-import com.hmdp.entity.Shop;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
  *  服务实现类
  * </p>
+ * 商铺类型几乎不变，在内存中保存一份不可变的快照（列表和序列化好的json），查询时直接返回；
+ * 修改后递增redis中的版本号并广播，各节点收到消息或者定时发现版本号变化时重新加载整个快照
  *
  * @author 虎哥
  * @since 2021-12-22
  */
 @Service
+@Slf4j
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    //定时检查版本号的间隔，发布订阅消息丢失时兜底
+    @Value("${hmdp.shop-type.refresh-interval-ms:30000}")
+    private long refreshIntervalMs;
+
+    //当前的快照，整体替换，读取时不加锁
+    private volatile Snapshot snapshot;
+    private ScheduledExecutorService refreshExecutor;
+
+    @PostConstruct
+    private void init() {
+        //1、订阅版本变化消息，消息内容是新的版本号
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            try {
+                refreshIfChanged(Long.parseLong(body));
+            } catch (NumberFormatException e) {
+                log.warn("无效的商铺类型版本消息：{}", body);
+            }
+        }, new ChannelTopic(SHOP_TYPE_CHANNEL));
+        //2、定时对比redis中的版本号
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shop-type-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                refreshIfChanged(currentVersion());
+            } catch (Exception e) {
+                log.error("检查商铺类型版本失败", e);
+            }
+        }, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
     /**
      * 查询所有商铺类型
-     * @return 商铺类型列表
+     * @return 商铺类型列表，列表和其中的对象是所有请求共享的，不能修改
      */
     @Override
     public List<ShopType> queryAllList() {
-        String key = CACHE_SHOP_TYPE_KEY;
-        //1、从redis中查询商铺类型缓存
-        List<String> shopList =stringRedisTemplate.opsForList().range(key, 0, -1);
-        //2、判断是否存在
-        if(shopList != null && shopList.size() > 0){
-            //3、存在直接返回
-            List<ShopType> shopTypeList = shopList.stream().map(shopType -> JSONUtil.toBean(shopType, ShopType.class)).
-                    sorted((o1, o2) -> o1.getSort() - o2.getSort()).
-                    collect(Collectors.toList());
-            return shopTypeList;
+        return snapshot().types;
+    }
+
+    /**
+     * 查询所有商铺类型的json，快照创建时已经序列化好
+     * @return 商铺类型列表的json，所有请求共享，不能修改
+     */
+    @Override
+    public byte[] queryAllJson() {
+        return snapshot().body;
+    }
+
+    @Override
+    public long markChanged() {
+        //1、递增版本号并广播，其他节点收到后重新加载
+        Long version = stringRedisTemplate.opsForValue().increment(SHOP_TYPE_VERSION_KEY);
+        stringRedisTemplate.convertAndSend(SHOP_TYPE_CHANNEL, String.valueOf(version));
+        //2、本节点立即重新加载
+        refreshIfChanged(version);
+        return version;
+    }
+
+    //还没有加载时第一次查询负责加载
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = load();
+            }
+            return snapshot;
+        }
+    }
+
+    //版本号和当前快照不同时重新加载；redis中的版本号被删除或者回退时也会变小，同样视为变化
+    private synchronized void refreshIfChanged(long version) {
+        if (snapshot != null && snapshot.version == version) {
+            return;
+        }
+        snapshot = load();
+        log.info("商铺类型快照已更新，版本：{}，数量：{}", snapshot.version, snapshot.types.size());
+    }
+
+    //先读版本号再查数据库，加载期间发生的修改会在下一次检查时发现
+    private Snapshot load() {
+        long version = currentVersion();
+        List<ShopType> types = query().orderByAsc("sort").list();
+        try {
+            return new Snapshot(version, Collections.unmodifiableList(types), objectMapper.writeValueAsBytes(types));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("商铺类型序列化失败", e);
         }
-        //3、不存在需要查数据库
-        List<ShopType> shopTypeList = query().orderByAsc("sort").list();
-        //4、判断数据库是否有商铺类型
-        if(shopTypeList ==  null || shopTypeList.size() == 0){
-            return null;
+    }
+
+    private long currentVersion() {
+        String version = stringRedisTemplate.opsForValue().get(SHOP_TYPE_VERSION_KEY);
+        return version == null ? 0 : Long.parseLong(version);
+    }
+
+    /**
+     * 商铺类型快照：版本号、按sort排序的列表和接口输出的json，创建后不再修改
+     */
+    private static class Snapshot {
+        private final long version;
+        private final List<ShopType> types;
+        private final byte[] body;
+
+        Snapshot(long version, List<ShopType> types, byte[] body) {
+            this.version = version;
+            this.types = types;
+            this.body = body;
         }
-        //5、有的话存在redis中
-        // 5.1 先删除旧的！防止重复追加
-        stringRedisTemplate.delete(key);
-
-        // 5.2 使用 rightPushAll 保证顺序（数据库查出来是啥顺序，Redis里就是啥顺序）
-        stringRedisTemplate.opsForList().rightPushAll(key, shopTypeList.stream()
-                .map(JSONUtil::toJsonStr)
-                .collect(Collectors.toList()));
-
-        // 5.3 务必设置过期时间！防止数据由于数据库变更而不一致
-        stringRedisTemplate.expire(key, 30, TimeUnit.MINUTES);
-        //6、将商铺类型进行返回
-        return shopTypeList;
     }
 }
@@ -1,21 +1,31 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.SeckillSoldOutCache;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.aop.framework.AopContext;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
@@ -25,10 +35,11 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.time.Duration;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_SEGMENTS_KEY;
 
 /**
  * <p>
@@ -44,11 +55,13 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
-    private RedisIdWorker redisIdWorker;
+    private IdGenerator idGenerator;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private RedissonClient redissonClient;
+    @Resource
+    private SeckillSoldOutCache seckillSoldOutCache;
 
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
     static{
@@ -56,9 +69,50 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
         SECKILL_SCRIPT.setResultType(Long.class);
     }
+    //从其他库存分段取一个库存
+    private static final DefaultRedisScript<Long> TAKE_STOCK_SCRIPT;
+    static{
+        TAKE_STOCK_SCRIPT = new DefaultRedisScript<>();
+        TAKE_STOCK_SCRIPT.setLocation(new ClassPathResource("seckill-take.lua"));
+        TAKE_STOCK_SCRIPT.setResultType(Long.class);
+    }
+    //取库存时发现为空的分段在这段时间内跳过
+    private static final long EMPTY_SEGMENT_TTL_MS = 1000;
+
+    //消息队列名称和消费者组名称，分区队列的名称见SeckillKeys；不带hash tag的旧队列只在启动时排空遗留的消息
+    private static final String QUEUE_NAME = "stream.orders";
+    private static final String GROUP_NAME = "g1";
+    //遍历pendingList时每页读取的消息数量
+    private static final int CLAIM_PAGE_SIZE = 100;
+
+    //每次从消息队列中读取的订单数量，大于1时开启批量下单
+    @Value("${hmdp.seckill.order.batch-size:1}")
+    private int batchSize;
+    //每个节点消费订单的线程数量
+    @Value("${hmdp.seckill.order.workers:1}")
+    private int workers;
+    //消费者名称前缀，为空时使用 主机名:进程号，保证每个节点的消费者名称唯一
+    @Value("${hmdp.seckill.order.consumer-name:}")
+    private String consumerName;
+    //pendingList中的消息超过这个空闲时间仍未ACK，认为其消费者已经宕机，由其他消费者认领
+    @Value("${hmdp.seckill.order.claim-idle-ms:60000}")
+    private long claimIdleMs;
+    //订单队列的分区数量，使用stream.orders:{0} ~ stream.orders:{n-1}
+    @Value("${hmdp.seckill.order.partitions:1}")
+    private int partitions;
+    //本节点负责消费的分区，分区数量大于1时必须配置，多个节点之间不能重叠，否则同一个分区的订单会被并发处理
+    @Value("${hmdp.seckill.order.owned-partitions:}")
+    private List<Integer> ownedPartitions;
+
+    //每个优惠券的库存分段数量
+    private final Map<Long, Integer> stockSegmentsCache = new ConcurrentHashMap<>();
+    //最近取库存时为空的分段 -> 过期时间，避免每个请求都依次访问所有空分段
+    private final Map<String, Long> emptySegments = new ConcurrentHashMap<>();
 
     //线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private ExecutorService seckillOrderExecutor;
+    //节点是否在运行，销毁时置为false让消费线程退出
+    private volatile boolean running = true;
     //代理对象
     @Resource
     private IVoucherOrderService proxy;
@@ -66,50 +120,150 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     @PostConstruct//启动时执行
     private void init(){
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        //1、计算本节点负责的分区队列
+        List<String> queueNames = new ArrayList<>();
+        if(partitions <= 1){
+            queueNames.add(SeckillKeys.streamKey(0));
+        }else{
+            //1、1分区时每个节点只消费明确分配给自己的分区，不默认消费全部分区，保证分区内有序
+            if(ownedPartitions == null || ownedPartitions.isEmpty()){
+                throw new IllegalStateException("订单队列分区数量为" + partitions + "，请配置本节点负责的分区 hmdp.seckill.order.owned-partitions");
+            }
+            for (Integer partition : new LinkedHashSet<>(ownedPartitions)) {
+                if(partition == null || partition < 0 || partition >= partitions){
+                    throw new IllegalStateException("无效的订单队列分区：" + partition + "，分区范围 0 ~ " + (partitions - 1));
+                }
+                queueNames.add(SeckillKeys.streamKey(partition));
+            }
+        }
+        //1、2旧版本的队列中还有消息时一起消费，直到排空
+        queueNames.addAll(legacyQueueNames());
+        //2、创建消费者组，已经存在时忽略 xgroup create stream.orders:{0} g1 0 mkstream
+        queueNames.forEach(this::createGroupIfAbsent);
+        //3、生成本节点的消费者名称
+        if(StrUtil.isBlank(consumerName)){
+            consumerName = NetUtil.getLocalHostName() + ":" + RuntimeUtil.getPid();
+        }
+        //4、分配队列：不分区时所有线程共同消费一个队列，分区时每个分区只由一个线程消费，保证分区内有序
+        List<List<String>> assignments = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            assignments.add(partitions <= 1 ? queueNames : new ArrayList<>());
+        }
+        if(partitions > 1){
+            for (int i = 0; i < queueNames.size(); i++) {
+                assignments.get(i % workers).add(queueNames.get(i));
+            }
+        }
+        //5、每个线程一个消费者，并行消费订单
+        seckillOrderExecutor = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            if(assignments.get(i).isEmpty()){
+                continue;
+            }
+            seckillOrderExecutor.submit(new VoucherOrderHandler(consumerName + "-" + i, assignments.get(i)));
+        }
+        log.info("订单消费者已启动，consumer={}，workers={}，queues={}", consumerName, workers, queueNames);
     }
 
     @PreDestroy//销毁时执行
     public void destroy() {
+        running = false;
         // 停止线程池，不再接收新任务
-        SECKILL_ORDER_EXECUTOR.shutdown();
+        seckillOrderExecutor.shutdown();
         try {
             // 等待正在执行的任务完成（例如等待几秒）
-            if (!SECKILL_ORDER_EXECUTOR.awaitTermination(5, TimeUnit.SECONDS)) {
-                SECKILL_ORDER_EXECUTOR.shutdownNow(); // 强制停止
+            if (!seckillOrderExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                seckillOrderExecutor.shutdownNow(); // 强制停止
             }
         } catch (InterruptedException e) {
-            SECKILL_ORDER_EXECUTOR.shutdownNow();
+            seckillOrderExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 查询优惠券的库存分段数量，新建秒杀券时确定，之后不再变化，因此缓存在本地
+     * @param voucherId 优惠券id
+     * @return 分段数量，没有分段时为1
+     */
+    private int stockSegments(Long voucherId) {
+        return stockSegmentsCache.computeIfAbsent(voucherId, id -> {
+            String segments = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_SEGMENTS_KEY + id);
+            return segments == null ? 1 : Integer.parseInt(segments);
+        });
+    }
+
+    /**
+     * 旧版本使用的不带hash tag的队列：stream.orders 和 stream.orders:n，只返回还存在的
+     * @return 队列名称
+     */
+    private List<String> legacyQueueNames() {
+        List<String> candidates = new ArrayList<>();
+        candidates.add(QUEUE_NAME);
+        for (int i = 0; i < Math.max(partitions, 1); i++) {
+            candidates.add(QUEUE_NAME + ":" + i);
+        }
+        List<String> existing = new ArrayList<>();
+        for (String candidate : candidates) {
+            if(Boolean.TRUE.equals(stringRedisTemplate.hasKey(candidate))){
+                existing.add(candidate);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * 创建消费者组
+     * @param queueName 消息队列名称
+     */
+    private void createGroupIfAbsent(String queueName) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    ((StringRedisConnection) connection).xGroupCreate(queueName, ReadOffset.from("0"), GROUP_NAME, true));
+        } catch (Exception e) {
+            //BUSYGROUP 消费者组已经存在
+            log.debug("消费者组已存在：{}", e.getMessage());
         }
     }
+
     private class VoucherOrderHandler implements Runnable{
+        //当前线程的消费者
+        private final Consumer consumer;
+        //当前线程负责的队列
+        private final List<String> queueNames;
+        //上一次认领超时消息的时间
+        private long lastClaimTime;
+
+        VoucherOrderHandler(String name, List<String> queueNames) {
+            this.consumer = Consumer.from(GROUP_NAME, name);
+            this.queueNames = queueNames;
+        }
+
         @Override
         public void run() {
-            String queueName = "stream.orders";
-            while(true){
+            //启动时先处理自己pendingList中上次没处理完的消息
+            handlePendingList();
+            while(running){
 
                 try {
-                    //1、获取队列中的订单信息xreadgroup group g1 c1 count 1 block 2000 streams streams.order（消息队列名称） >（最近一条未消费消息）
+                    //1、定期认领宕机消费者遗留的消息
+                    claimIdlePending();
+                    //2、获取队列中的订单信息xreadgroup group g1 consumer count n block 2000 streams stream.orders:0 stream.orders:1 > >
                     List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().
-                            read(Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2000)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed()));
-                    //2、判断消息是否获取成功
-                    if(records.size() == 0 || records == null){
-                        //2、1如果获取失败，说明没有消息，继续进行下一次循环
+                            read(consumer,
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(2000)),
+                            offsets(ReadOffset.lastConsumed()));
+                    //3、判断消息是否获取成功
+                    if(records == null || records.isEmpty()){
+                        //3、1如果获取失败，说明没有消息，继续进行下一次循环
                         continue;
                     }
-                    //3、解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = records.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-
-                    //4、获取成功可以下单
-                    handleVoucherOrder(voucherOrder);
-                    //5、ACK确认 sack stream.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
+                    //4、解析消息中的订单信息，下单并ACK确认
+                    handleRecords(records);
 
                 } catch (Exception e) {
+                    if(!running){
+                        break;
+                    }
                     handlePendingList();
                 }
             }
@@ -119,37 +273,159 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
          * 处理pendingList中的消息
          */
         private void handlePendingList() {
-            String queueName = "stream.orders";
-            while(true){
+            while(running){
 
                 try {
-                    //1、获取队列中的订单信息xreadgroup group g1 c1 count 1 streams streams.order（消息队列名称） *（未处理消息）
+                    //1、获取队列中的订单信息xreadgroup group g1 consumer count n streams stream.orders:0 stream.orders:1 0 0（未处理消息）
                     List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().
-                            read(Consumer.from("g1", "c1"),
-                                    StreamReadOptions.empty().count(1),
-                                    StreamOffset.create(queueName, ReadOffset.from("0")));
+                                    read(consumer,
+                                    StreamReadOptions.empty().count(batchSize),
+                                    offsets(ReadOffset.from("0")));
                     //2、判断消息是否获取成功
-                    if(records.size() == 0 || records == null){
+                    if(records == null || records.isEmpty()){
                         //2、1如果获取失败，说明没有消息，此时不需要处理pendinglist内处理异常的消息
                         break;
                     }
-                    //3、解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = records.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    //4、获取成功可以下单
-                    handleVoucherOrder(voucherOrder);
-                    //5、ACK确认 sack stream.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
+                    //3、解析消息中的订单信息，下单并ACK确认
+                    handleRecords(records);
 
                 } catch (Exception e) {
                     log.error("处理订单异常", e);
                     try {
                         Thread.sleep(20);
                     } catch (InterruptedException ex) {
-                        throw new RuntimeException(ex);
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 当前线程负责的所有队列的读取位置
+         * @param readOffset 读取位置
+         * @return 每个队列的读取位置
+         */
+        @SuppressWarnings("unchecked")
+        private StreamOffset<String>[] offsets(ReadOffset readOffset) {
+            StreamOffset<String>[] offsets = new StreamOffset[queueNames.size()];
+            for (int i = 0; i < queueNames.size(); i++) {
+                offsets[i] = StreamOffset.create(queueNames.get(i), readOffset);
+            }
+            return offsets;
+        }
+
+        /**
+         * 认领其他消费者超时未ACK的消息，认领后这些消息进入自己的pendingList再处理；
+         * 然后删除已经没有待确认消息、并且长时间没有活动的消费者（宕机节点留下的消费者名称）
+         */
+        private void claimIdlePending() {
+            long now = System.currentTimeMillis();
+            if(now - lastClaimTime < claimIdleMs){
+                return;
+            }
+            lastClaimTime = now;
+            int claimed = 0;
+            for (String queueName : queueNames) {
+                claimed += claimIdlePending(queueName);
+                removeIdleConsumers(queueName);
+            }
+            if(claimed == 0){
+                return;
+            }
+            log.info("消费者{}认领了{}条超时订单消息", consumer.getName(), claimed);
+            //处理认领到的消息
+            handlePendingList();
+        }
+
+        /**
+         * 按消息id分页遍历整个pendingList，认领空闲时间超过阈值的消息
+         * @param queueName 消息队列名称
+         * @return 认领到的消息数量
+         */
+        private int claimIdlePending(String queueName) {
+            int claimed = 0;
+            int pageSize = Math.max(batchSize, CLAIM_PAGE_SIZE);
+            Range<String> range = Range.unbounded();
+            while(running){
+                //1、查询消费者组中待确认的消息 xpending stream.orders g1 start + count
+                PendingMessages pendingMessages = stringRedisTemplate.opsForStream()
+                        .pending(queueName, GROUP_NAME, range, pageSize);
+                if(pendingMessages.isEmpty()){
+                    break;
+                }
+                //2、筛选出其他消费者空闲时间超过阈值的消息
+                List<RecordId> idleIds = new ArrayList<>();
+                RecordId lastId = null;
+                for (PendingMessage pendingMessage : pendingMessages) {
+                    lastId = pendingMessage.getId();
+                    if(!consumer.getName().equals(pendingMessage.getConsumerName())
+                            && pendingMessage.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMs){
+                        idleIds.add(pendingMessage.getId());
+                    }
+                }
+                //3、认领消息 xclaim stream.orders g1 consumer min-idle-time id...，min-idle-time保证多个节点同时认领时只有一个成功
+                if(!idleIds.isEmpty()){
+                    List<RecordId> claimedIds = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                            ((StringRedisConnection) connection).xClaimJustId(queueName, GROUP_NAME, consumer.getName(),
+                                    RedisStreamCommands.XClaimOptions.minIdleMs(claimIdleMs).ids(idleIds)));
+                    if(claimedIds != null){
+                        claimed += claimedIds.size();
                     }
                 }
+                //4、不满一页说明已经遍历完，否则从最后一条消息的下一个id继续
+                if(pendingMessages.size() < pageSize){
+                    break;
+                }
+                range = Range.rightUnbounded(Range.Bound.inclusive(
+                        lastId.getTimestamp() + "-" + (lastId.getSequence() + 1)));
+            }
+            return claimed;
+        }
+
+        /**
+         * 删除没有待确认消息、空闲时间超过阈值的其他消费者，正常运行的消费者每次阻塞读取都会刷新空闲时间
+         * @param queueName 消息队列名称
+         */
+        private void removeIdleConsumers(String queueName) {
+            StreamInfo.XInfoConsumers consumers = stringRedisTemplate.opsForStream().consumers(queueName, GROUP_NAME);
+            consumers.forEach(info -> {
+                if(!consumer.getName().equals(info.consumerName())
+                        && info.pendingCount() == 0 && info.idleTimeMs() >= claimIdleMs){
+                    stringRedisTemplate.opsForStream().deleteConsumer(queueName, Consumer.from(GROUP_NAME, info.consumerName()));
+                    log.info("删除空闲的订单消费者：{}", info.consumerName());
+                }
+            });
+        }
+
+        /**
+         * 解析一批消息并下单，下单完成后每个队列用一次XACK确认整批消息
+         * @param records 消息列表
+         */
+        private void handleRecords(List<MapRecord<String, Object, Object>> records) throws Exception {
+            //1、单条消息沿用原来的逐条下单逻辑
+            if(batchSize <= 1 || records.size() == 1){
+                for (MapRecord<String, Object, Object> record : records) {
+                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+                    handleVoucherOrder(voucherOrder);
+                    //ACK确认 sack stream.orders g1 id
+                    stringRedisTemplate.opsForStream().acknowledge(record.getStream(),GROUP_NAME,record.getId());
+                }
+                return;
+            }
+            //2、批量解析订单信息，按队列记录消息id
+            List<VoucherOrder> voucherOrders = new ArrayList<>(records.size());
+            Map<String, List<RecordId>> recordIdMap = new HashMap<>();
+            for (MapRecord<String, Object, Object> record : records) {
+                voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+                recordIdMap.computeIfAbsent(record.getStream(), k -> new ArrayList<>()).add(record.getId());
+            }
+            //3、批量下单
+            handleVoucherOrders(voucherOrders);
+            //4、整批ACK确认 sack stream.orders g1 id1 id2 ...
+            for (Map.Entry<String, List<RecordId>> entry : recordIdMap.entrySet()) {
+                stringRedisTemplate.opsForStream().acknowledge(entry.getKey(), GROUP_NAME,
+                        entry.getValue().toArray(new RecordId[0]));
             }
         }
     }
@@ -184,27 +460,90 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      */
     @Override
     public Result secKillVoucher(Long voucherId) throws InterruptedException {
+        //已售罄的优惠券直接返回，不再生成订单id和执行lua脚本
+        if(seckillSoldOutCache.isSoldOut(voucherId)){
+            return Result.fail("库存不足！");
+        }
         //获取用户id
         Long userId = UserHolder.getUser().getId();
         //获取订单id
-        long orderId = redisIdWorker.nextId("order");
-        //1、读取lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(),
-                userId.toString(),
-                String.valueOf(orderId)
-        );
+        long orderId = idGenerator.nextId("order");
+        //1、执行lua脚本，库存、下单用户和订单队列在同一个分区
+        int segments = stockSegments(voucherId);
+        Long result;
+        if(segments <= 1){
+            int partition = SeckillKeys.partition(voucherId, partitions);
+            result = seckill(SeckillKeys.stockKey(voucherId, partitions), SeckillKeys.orderKey(voucherId, partitions),
+                    partition, voucherId, userId, orderId, false);
+        }else{
+            result = seckillSegment(voucherId, segments, userId, orderId);
+        }
         int res = result.intValue();
         //2、判断结果是不是0
         if(res != 0){
-            //2、1.不为0
+            //2、1.不为0，所有分段的库存都不足时记录售罄标记
+            if(res == 1){
+                seckillSoldOutCache.markSoldOut(voucherId);
+            }
             return Result.fail(res == 1 ? "库存不足！" : "不能重复下单！");
         }
         //3、返回订单id
         return Result.ok(orderId);
     }
+
+    /**
+     * 分段库存下单：每个用户固定属于一个分段（userId % 分段数量），只在这个分段的下单用户集合中判断一人一单，
+     * 因此一人一单仍然在一次EVAL中完成；不同分段使用不同分区的hash tag，扣减库存分散到不同的slot。
+     * 用户所在分段的库存不足时，从其他分段取一个库存再下单，已知为空的分段短时间内跳过；所有分段都取不到时视为售罄
+     * @return 0成功，1库存不足，2重复下单
+     */
+    private Long seckillSegment(Long voucherId, int segments, Long userId, long orderId) {
+        int home = (int) Math.floorMod(userId, (long) segments);
+        String orderKey = SeckillKeys.segmentOrderKey(voucherId, home, partitions);
+        int partition = SeckillKeys.segmentPartition(voucherId, home, partitions);
+        //1、先扣减自己分段的库存
+        Long result = seckill(SeckillKeys.segmentStockKey(voucherId, home, partitions), orderKey,
+                partition, voucherId, userId, orderId, false);
+        if(result == null || result != 1){
+            return result;
+        }
+        //2、从其他分段取一个库存，从随机位置开始避免所有用户集中到同一个分段
+        int offset = ThreadLocalRandom.current().nextInt(segments - 1);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < segments - 1; i++) {
+            int segment = (home + 1 + (offset + i) % (segments - 1)) % segments;
+            String stockKey = SeckillKeys.segmentStockKey(voucherId, segment, partitions);
+            Long emptyUntil = emptySegments.get(stockKey);
+            if(emptyUntil != null && emptyUntil > now){
+                continue;
+            }
+            Long taken = stringRedisTemplate.execute(TAKE_STOCK_SCRIPT, Collections.singletonList(stockKey));
+            if(taken == null || taken == 0){
+                emptySegments.put(stockKey, now + EMPTY_SEGMENT_TTL_MS);
+                continue;
+            }
+            emptySegments.remove(stockKey);
+            //3、用取到的库存在自己的分段下单，重复下单时归还库存
+            result = seckill(SeckillKeys.segmentStockKey(voucherId, home, partitions), orderKey,
+                    partition, voucherId, userId, orderId, true);
+            if(result != null && result == 2){
+                stringRedisTemplate.opsForValue().increment(stockKey);
+            }
+            return result;
+        }
+        return result;
+    }
+
+    private Long seckill(String stockKey, String orderKey, int partition, Long voucherId, Long userId, long orderId, boolean reserved) {
+        return stringRedisTemplate.execute(
+                SECKILL_SCRIPT,
+                Arrays.asList(stockKey, orderKey, SeckillKeys.streamKey(partition)),
+                voucherId.toString(),
+                userId.toString(),
+                String.valueOf(orderId),
+                reserved ? "1" : "0"
+        );
+    }
    /* *//**
      * 秒杀优惠券
      * @param voucherId 优惠券id
@@ -297,6 +636,21 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
     }
 
+    /**
+     * 批量创建订单，批量失败时退化为逐条创建，避免一条异常订单拖垮整批
+     * @param voucherOrders
+     */
+    private void handleVoucherOrders(List<VoucherOrder> voucherOrders) throws Exception {
+        try {
+            proxy.createVoucherOrders(voucherOrders);
+        } catch (Exception e) {
+            log.error("批量创建订单失败，逐条重试", e);
+            for (VoucherOrder voucherOrder : voucherOrders) {
+                handleVoucherOrder(voucherOrder);
+            }
+        }
+    }
+
     @Transactional
     public  void createVoucherOrder(VoucherOrder voucherOrder) {
         //4、一人一单
@@ -317,4 +671,60 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         //7、订单写入数据库
         save(voucherOrder);
     }
+
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        //1、批内去重，同一用户同一优惠券只保留一条
+        Map<String, VoucherOrder> orderMap = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orderMap.putIfAbsent(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId(), voucherOrder);
+        }
+        //2、一人一单，一次查询出已经存在的订单
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> voucherIds = new HashSet<>();
+        for (VoucherOrder voucherOrder : orderMap.values()) {
+            userIds.add(voucherOrder.getUserId());
+            voucherIds.add(voucherOrder.getVoucherId());
+        }
+        List<VoucherOrder> existOrders = query().select("user_id", "voucher_id")
+                .in("user_id", userIds).in("voucher_id", voucherIds).list();
+        for (VoucherOrder existOrder : existOrders) {
+            orderMap.remove(existOrder.getUserId() + ":" + existOrder.getVoucherId());
+        }
+        if (orderMap.isEmpty()) {
+            return;
+        }
+        //3、按优惠券聚合，每个优惠券只执行一次扣减库存
+        Map<Long, List<VoucherOrder>> voucherOrderMap = orderMap.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        List<VoucherOrder> saveOrders = new ArrayList<>(orderMap.size());
+        for (Map.Entry<Long, List<VoucherOrder>> entry : voucherOrderMap.entrySet()) {
+            int count = entry.getValue().size();
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock=stock-" + count).ge("stock", count)
+                    .eq("voucher_id", entry.getKey()).update();
+            if (success) {
+                saveOrders.addAll(entry.getValue());
+                continue;
+            }
+            //3、1库存不够整批扣减时逐条扣减，剩余的库存仍然按顺序分给前面的订单
+            int saved = 0;
+            for (VoucherOrder voucherOrder : entry.getValue()) {
+                boolean single = seckillVoucherService.update()
+                        .setSql("stock=stock-1").gt("stock", 0)
+                        .eq("voucher_id", entry.getKey()).update();
+                if (!single) {
+                    break;
+                }
+                saveOrders.add(voucherOrder);
+                saved++;
+            }
+            log.error("库存不足，部分订单未写入数据库，voucherId={}，count={}，saved={}", entry.getKey(), count, saved);
+        }
+        //4、订单通过批量执行器一次写入数据库
+        if (!saveOrders.isEmpty()) {
+            saveBatch(saveOrders, saveOrders.size());
+        }
+    }
 }
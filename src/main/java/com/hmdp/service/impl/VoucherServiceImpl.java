@@ -7,14 +7,21 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.SeckillSoldOutCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_SEGMENTS_KEY;
 
 /**
  * <p>
@@ -31,6 +38,14 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillSoldOutCache seckillSoldOutCache;
+    //新建秒杀券时库存拆分的段数，1表示不分段；每个分段位于不同的分区，不超过订单队列分区数量时分散到不同的slot
+    @Value("${hmdp.seckill.stock-segments:1}")
+    private int stockSegments;
+    //订单队列的分区数量，库存key和订单队列使用相同的分区
+    @Value("${hmdp.seckill.order.partitions:1}")
+    private int partitions;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -52,7 +67,83 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        //将优惠券信息保存到redis中
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY+ voucher.getId(), voucher.getStock().toString());
+        //将优惠券信息保存到redis中，事务提交后再写入，回滚时redis中不会出现没有数据库记录的库存
+        afterCommit(() -> saveSeckillStock(voucher.getId(), voucher.getStock()));
+    }
+
+    private void saveSeckillStock(Long voucherId, Integer stock) {
+        if(stockSegments <= 1){
+            stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(voucherId, partitions), stock.toString());
+            return;
+        }
+        //分段库存：把库存拆分到多个key中，seckill:stock:{分段i所在分区}:id:i
+        Map<String, String> stockMap = new LinkedHashMap<>();
+        int[] stocks = splitStock(stock, stockSegments);
+        for (int i = 0; i < stockSegments; i++) {
+            stockMap.put(SeckillKeys.segmentStockKey(voucherId, i, partitions), String.valueOf(stocks[i]));
+        }
+        //分段数量最后写入，秒杀请求读到分段数量时所有分段的库存都已经存在
+        stockMap.put(SECKILL_STOCK_SEGMENTS_KEY + voucherId, String.valueOf(stockSegments));
+        //逐个写入，每个分段使用自己所在分区的hash tag，位于不同的slot
+        stockMap.forEach((key, value) -> stringRedisTemplate.opsForValue().set(key, value));
+    }
+
+    /**
+     * 把库存尽量平均地拆分成若干段，余数分给前面的分段
+     * @param stock 总库存
+     * @param segments 分段数量
+     * @return 每一段的库存
+     */
+    private static int[] splitStock(int stock, int segments) {
+        int[] stocks = new int[segments];
+        for (int i = 0; i < segments; i++) {
+            stocks[i] = stock / segments + (i < stock % segments ? 1 : 0);
+        }
+        return stocks;
+    }
+
+    @Override
+    @Transactional
+    public Result addSeckillStock(Long voucherId, Integer count) {
+        if(count == null || count <= 0){
+            return Result.fail("补充的库存必须大于0");
+        }
+        //1、数据库增加库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock=stock+" + count)
+                .eq("voucher_id", voucherId).update();
+        if(!success){
+            return Result.fail("秒杀券不存在");
+        }
+        //2、事务提交后再增加redis库存并清除售罄标记，回滚时不会多出库存
+        afterCommit(() -> {
+            //2、1 redis增加库存，分段库存时平均加到每一段
+            String segments = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_SEGMENTS_KEY + voucherId);
+            if(segments == null){
+                stringRedisTemplate.opsForValue().increment(SeckillKeys.stockKey(voucherId, partitions), count);
+            }else{
+                int[] stocks = splitStock(count, Integer.parseInt(segments));
+                for (int i = 0; i < stocks.length; i++) {
+                    stringRedisTemplate.opsForValue().increment(SeckillKeys.segmentStockKey(voucherId, i, partitions), stocks[i]);
+                }
+            }
+            //2、2 清除所有节点的售罄标记
+            seckillSoldOutCache.clear(voucherId);
+        });
+        return Result.ok();
+    }
+
+    //在事务提交后执行，没有事务时立即执行
+    private static void afterCommit(Runnable task){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
     }
 }
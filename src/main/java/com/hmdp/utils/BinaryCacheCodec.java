@@ -0,0 +1,379 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.PropDesc;
+import cn.hutool.core.convert.Convert;
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制格式：
+ * 固定头部 [魔数 1字节][版本 1字节][逻辑过期时间 8字节][数据类型 1字节]，之后是数据；
+ * 数据类型为字段时，先写4字节的结构hash，再按属性名顺序写每个属性（1字节是否为空 + 变长编码的值）；
+ * 对象中有不支持的属性类型，或者本身是字符串、数字、集合等没有属性的值时，数据部分退化为json；
+ * 版本2的json由Spring的ObjectMapper序列化，可以直接写入响应，版本1的json由Hutool序列化，只用于解码
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte MAGIC = (byte) 0xCB;
+    private static final byte VERSION = 2;
+    private static final byte HUTOOL_JSON_VERSION = 1;
+    private static final byte KIND_FIELDS = 1;
+    private static final byte KIND_JSON = 2;
+    private static final int EXPIRE_OFFSET = 2;
+    private static final int KIND_OFFSET = 10;
+    private static final int HEADER_LENGTH = 11;
+
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_STRING = 5;
+    private static final byte TYPE_DATE_TIME = 6;
+
+    //每个类的属性结构
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+
+    public BinaryCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(Object value, long expireMillis) {
+        Schema schema = schemaOf(value.getClass());
+        Output out = new Output(128);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeFixedLong(expireMillis);
+        if (schema.properties == null) {
+            out.writeByte(KIND_JSON);
+            try {
+                out.writeBytes(objectMapper.writeValueAsBytes(value));
+            } catch (IOException e) {
+                throw new IllegalStateException("缓存对象编码失败：" + value.getClass(), e);
+            }
+            return out.toByteArray();
+        }
+        out.writeByte(KIND_FIELDS);
+        out.writeFixedInt(schema.hash);
+        try {
+            for (Property property : schema.properties) {
+                Object v = property.getter.invoke(value);
+                if (v == null) {
+                    out.writeByte((byte) 0);
+                    continue;
+                }
+                out.writeByte((byte) 1);
+                switch (property.type) {
+                    case TYPE_LONG:
+                        out.writeVarLong((Long) v);
+                        break;
+                    case TYPE_INT:
+                        out.writeVarLong((Integer) v);
+                        break;
+                    case TYPE_DOUBLE:
+                        out.writeFixedLong(Double.doubleToRawLongBits((Double) v));
+                        break;
+                    case TYPE_BOOLEAN:
+                        out.writeByte((byte) ((Boolean) v ? 1 : 0));
+                        break;
+                    case TYPE_STRING:
+                        byte[] bytes = ((String) v).getBytes(StandardCharsets.UTF_8);
+                        out.writeVarLong(bytes.length);
+                        out.writeBytes(bytes);
+                        break;
+                    default:
+                        LocalDateTime time = (LocalDateTime) v;
+                        out.writeVarLong(time.toEpochSecond(ZoneOffset.UTC));
+                        out.writeVarLong(time.getNano());
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("缓存对象编码失败：" + value.getClass(), e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public boolean canDecode(byte[] bytes) {
+        return bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC && (bytes[1] == VERSION || bytes[1] == HUTOOL_JSON_VERSION);
+    }
+
+    @Override
+    public long readExpireMillis(byte[] bytes) {
+        return new Input(bytes, EXPIRE_OFFSET).readFixedLong();
+    }
+
+    @Override
+    public <R> CacheValue<R> decode(byte[] bytes, Class<R> type) {
+        long expireMillis = readExpireMillis(bytes);
+        if (bytes[KIND_OFFSET] == KIND_JSON && bytes[1] == HUTOOL_JSON_VERSION) {
+            String json = new String(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, StandardCharsets.UTF_8);
+            return new CacheValue<>(fromJson(json, type), expireMillis);
+        }
+        if (bytes[KIND_OFFSET] == KIND_JSON) {
+            try {
+                return new CacheValue<>(objectMapper.readValue(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, type), expireMillis);
+            } catch (IOException e) {
+                throw new IllegalStateException("缓存对象解码失败：" + type, e);
+            }
+        }
+        Schema schema = schemaOf(type);
+        Input in = new Input(bytes, HEADER_LENGTH);
+        //写入时的结构和当前类的结构不一致，视为无法解码
+        if (schema.properties == null || in.readFixedInt() != schema.hash) {
+            return null;
+        }
+        try {
+            R r = type.newInstance();
+            for (Property property : schema.properties) {
+                if (in.readByte() == 0) {
+                    continue;
+                }
+                Object v;
+                switch (property.type) {
+                    case TYPE_LONG:
+                        v = in.readVarLong();
+                        break;
+                    case TYPE_INT:
+                        v = (int) in.readVarLong();
+                        break;
+                    case TYPE_DOUBLE:
+                        v = Double.longBitsToDouble(in.readFixedLong());
+                        break;
+                    case TYPE_BOOLEAN:
+                        v = in.readByte() == 1;
+                        break;
+                    case TYPE_STRING:
+                        int length = (int) in.readVarLong();
+                        v = in.readString(length);
+                        break;
+                    default:
+                        long second = in.readVarLong();
+                        v = LocalDateTime.ofEpochSecond(second, (int) in.readVarLong(), ZoneOffset.UTC);
+                }
+                property.setter.invoke(r, v);
+            }
+            return new CacheValue<>(r, expireMillis);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("缓存对象解码失败：" + type, e);
+        }
+    }
+
+    @Override
+    public RawJson readJson(byte[] bytes) {
+        //按字段编码的数据没有json，Hutool序列化的json格式和接口响应不一致，都需要解码后再序列化
+        if (bytes[KIND_OFFSET] != KIND_JSON || bytes[1] != VERSION) {
+            return null;
+        }
+        return new RawJson(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, readExpireMillis(bytes));
+    }
+
+    //版本1的json：对象用toBean转换，其他值包装成数组解析后再转换成目标类型
+    private static <R> R fromJson(String json, Class<R> type) {
+        if (json.startsWith("{") && !Map.class.isAssignableFrom(type)) {
+            return JSONUtil.toBean(json, type);
+        }
+        return Convert.convert(type, JSONUtil.parseArray("[" + json + "]").get(0));
+    }
+
+    private Schema schemaOf(Class<?> type) {
+        return schemas.computeIfAbsent(type, Schema::new);
+    }
+
+    private static byte typeOf(Class<?> type) {
+        if (type == Long.class || type == long.class) {
+            return TYPE_LONG;
+        }
+        if (type == Integer.class || type == int.class) {
+            return TYPE_INT;
+        }
+        if (type == Double.class || type == double.class) {
+            return TYPE_DOUBLE;
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return TYPE_BOOLEAN;
+        }
+        if (type == String.class) {
+            return TYPE_STRING;
+        }
+        if (type == LocalDateTime.class) {
+            return TYPE_DATE_TIME;
+        }
+        return 0;
+    }
+
+    //字符串、数字、集合等值本身没有可以按字段编码的属性
+    private static boolean isValueType(Class<?> type) {
+        return type.isPrimitive() || type.isArray() || type.isEnum()
+                || CharSequence.class.isAssignableFrom(type) || Number.class.isAssignableFrom(type)
+                || Boolean.class == type || Character.class == type
+                || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type);
+    }
+
+    /**
+     * 类的属性结构，按属性名排序；有不支持的属性类型或者没有属性时properties为null
+     */
+    private static class Schema {
+        private final List<Property> properties;
+        private final int hash;
+
+        Schema(Class<?> type) {
+            List<Property> list = new ArrayList<>();
+            StringBuilder signature = new StringBuilder();
+            boolean supported = !isValueType(type);
+            for (PropDesc prop : supported ? BeanUtil.getBeanDesc(type).getProps() : Collections.<PropDesc>emptyList()) {
+                if (prop.getField() == null || Modifier.isStatic(prop.getField().getModifiers())
+                        || prop.getGetter() == null || prop.getSetter() == null) {
+                    continue;
+                }
+                byte propertyType = typeOf(prop.getFieldClass());
+                if (propertyType == 0) {
+                    supported = false;
+                    break;
+                }
+                list.add(new Property(prop.getFieldName(), propertyType, prop.getGetter(), prop.getSetter()));
+            }
+            list.sort(Comparator.comparing(property -> property.name));
+            list.forEach(property -> signature.append(property.name).append(':').append(property.type).append(';'));
+            this.properties = supported && !list.isEmpty() ? list : null;
+            this.hash = signature.toString().hashCode();
+        }
+    }
+
+    private static class Property {
+        private final String name;
+        private final byte type;
+        private final Method getter;
+        private final Method setter;
+
+        Property(String name, byte type, Method getter, Method setter) {
+            this.name = name;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    private static class Output {
+        private byte[] buf;
+        private int pos;
+
+        Output(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        void writeByte(byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeFixedInt(int v) {
+            ensure(4);
+            for (int i = 3; i >= 0; i--) {
+                buf[pos++] = (byte) (v >>> (i * 8));
+            }
+        }
+
+        void writeFixedLong(long v) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buf[pos++] = (byte) (v >>> (i * 8));
+            }
+        }
+
+        //zigzag + 变长编码，小数字只占1~2个字节
+        void writeVarLong(long v) {
+            long zigzag = (v << 1) ^ (v >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[pos++] = (byte) zigzag;
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[pos];
+            System.arraycopy(buf, 0, bytes, 0, pos);
+            return bytes;
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                byte[] larger = new byte[Math.max(buf.length * 2, pos + n)];
+                System.arraycopy(buf, 0, larger, 0, pos);
+                buf = larger;
+            }
+        }
+    }
+
+    private static class Input {
+        private final byte[] buf;
+        private int pos;
+
+        Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        int readFixedInt() {
+            int v = 0;
+            for (int i = 0; i < 4; i++) {
+                v = v << 8 | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readFixedLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = v << 8 | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        String readString(int length) {
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CacheClient使用的布隆过滤器，保存某个前缀下所有存在的缓存key
+ * 位数组使用AtomicLongArray，启动时加载数据库的同时可以并发写入新增的key；
+ * 加载完成之前mightContain总是返回true，不拦截任何请求
+ */
+public class CacheBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashCount;
+    //数据库中的数据是否已经全部加载
+    private volatile boolean ready;
+
+    //被过滤器拦截的请求数
+    private final LongAdder rejected = new LongAdder();
+    //通过过滤器的请求数
+    private final LongAdder passed = new LongAdder();
+    //通过过滤器但是数据库中不存在的请求数，即误判数
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * @param expectedInsertions 预计的数据量
+     * @param fpp 期望的误判率
+     */
+    public CacheBloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        //m = -n*ln(p)/(ln2)^2，k = m/n*ln2
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+    }
+
+    public void put(String key) {
+        long[] hash = MurmurHash.hash128(key);
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitSize;
+            setBit(index);
+            combined += hash[1];
+        }
+    }
+
+    /**
+     * 判断key是否可能存在，并记录拦截和放行的次数
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(String key) {
+        if (!ready) {
+            return true;
+        }
+        long[] hash = MurmurHash.hash128(key);
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                rejected.increment();
+                return false;
+            }
+            combined += hash[1];
+        }
+        passed.increment();
+        return true;
+    }
+
+    /**
+     * 通过过滤器的key实际不存在时调用（数据库查不到或命中空值缓存），用于统计实际误判率
+     */
+    public void recordFalsePositive() {
+        if (ready) {
+            falsePositives.increment();
+        }
+    }
+
+    public void markReady() {
+        this.ready = true;
+    }
+
+    /**
+     * 根据已经置位的比例估算当前的误判率：(置位比例)^k
+     */
+    public double expectedFpp() {
+        long setBits = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            setBits += Long.bitCount(bits.get(i));
+        }
+        return Math.pow((double) setBits / bitSize, hashCount);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long rejectedCount = rejected.sum();
+        long falsePositiveCount = falsePositives.sum();
+        stats.put("ready", ready);
+        stats.put("bitSize", bitSize);
+        stats.put("hashCount", hashCount);
+        stats.put("expectedFpp", expectedFpp());
+        stats.put("rejected", rejectedCount);
+        stats.put("passed", passed.sum());
+        stats.put("falsePositives", falsePositiveCount);
+        //不存在的key中没有被拦截的比例
+        long absent = rejectedCount + falsePositiveCount;
+        stats.put("falsePositiveRate", absent == 0 ? 0D : (double) falsePositiveCount / absent);
+        return stats;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, old, old | mask));
+    }
+}
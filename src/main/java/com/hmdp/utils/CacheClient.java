@@ -2,140 +2,945 @@ package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.RedisData;
-import com.hmdp.entity.Shop;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.hmdp.config.CacheGenerationProperties;
+import com.hmdp.config.CacheRefreshProperties;
+import com.hmdp.config.LocalCacheProperties;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * 基于springredisTemplate封装的一个缓存工具类
+ * 写入redis的数据格式由CacheCodec决定，读取时按数据头部自动识别json和二进制格式。
+ * 可选开启本地一级缓存：命中时不访问redis也不反序列化，删除缓存时通过redis发布订阅通知所有节点失效。
+ * 本地缓存返回的是共享对象，调用方不能修改返回值
+ * 可以为某个前缀注册布隆过滤器，不存在的key在访问redis和数据库之前直接拦截。
+ * 同一个key的缓存重建在本节点内只由一个线程进行：逻辑过期只有一个线程去抢redis锁，缓存穿透场景下并发的未命中只查一次数据库
+ * 开启热点key探测后，访问次数超过阈值的key即使所属前缀没有配置本地缓存，也会短时间复制到本地缓存，冷却后移除。
+ * 配置为按代数失效的前缀，key中带有当前代数，代数加一即可让整个前缀失效，不需要扫描删除。
+ * 按前缀配置过期时间随机化和提前刷新：过期时间随机增加一段，避免同时写入的数据同时过期；
+ * 逻辑过期的数据在快要过期时按概率提前重建，越接近过期、重建越慢，提前刷新的概率越大
  */
 @Component
 @Slf4j
 public class CacheClient {
 
     private StringRedisTemplate stringRedisTemplate;
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private RedisMessageListenerContainer listenerContainer;
+    private LocalCacheProperties localCacheProperties;
+    private CacheRefreshProperties refreshProperties;
+    private CacheGenerationProperties generationProperties;
+    //缓存重建线程池
+    private CacheRebuildExecutor rebuildExecutor;
+    //热点key探测
+    private HotKeyDetector hotKeyDetector;
+    //本地一级缓存，本地缓存和热点key探测都没有开启时为null
+    private Cache<String, LocalEntry> localCache;
+    //写入redis时使用的格式
+    private CacheCodec codec;
+    //读取时支持的格式，写入时使用codec
+    private CacheCodec[] readCodecs;
+    //和接口响应相同的序列化配置，本地缓存中的对象序列化后可以直接写入响应
+    private ObjectMapper objectMapper;
+    //不按代数失效的前缀，逻辑过期数据在redis中的过期时间是逻辑过期时间的倍数
+    private long logicalTtlMultiplier;
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer,
+                       LocalCacheProperties localCacheProperties, CacheRefreshProperties refreshProperties,
+                       CacheGenerationProperties generationProperties,
+                       CacheRebuildExecutor rebuildExecutor, HotKeyDetector hotKeyDetector, ObjectMapper objectMapper,
+                       @Value("${hmdp.cache.codec:json}") String codec,
+                       @Value("${hmdp.cache.logical-ttl-multiplier:10}") long logicalTtlMultiplier) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.localCacheProperties = localCacheProperties;
+        this.refreshProperties = refreshProperties;
+        this.generationProperties = generationProperties;
+        this.rebuildExecutor = rebuildExecutor;
+        this.hotKeyDetector = hotKeyDetector;
+        this.objectMapper = objectMapper;
+        CacheCodec binaryCodec = new BinaryCacheCodec(objectMapper);
+        CacheCodec jsonCodec = new JsonCacheCodec(objectMapper);
+        this.codec = "binary".equals(codec) ? binaryCodec : jsonCodec;
+        this.readCodecs = new CacheCodec[]{binaryCodec, jsonCodec};
+        this.logicalTtlMultiplier = logicalTtlMultiplier;
     }
-    //线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    //本节点正在重建的逻辑过期key，已经有线程在重建时其他线程不再去抢redis锁
+    private final Set<String> rebuildingKeys = ConcurrentHashMap.newKeySet();
+    //本节点正在查询数据库的key，同一个key并发未命中时等待同一次查询结果
+    private final Map<String, CompletableFuture<Object>> loadingKeys = new ConcurrentHashMap<>();
+    //每个key前缀的布隆过滤器
+    private final Map<String, CacheBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+    //正在重建的布隆过滤器，重建期间新增的key同时写入新旧两个过滤器
+    private final Map<String, CacheBloomFilter> rebuildingBloomFilters = new ConcurrentHashMap<>();
+    //定时重建布隆过滤器，补上订阅断开期间其他节点新增的key，第一次注册需要定时重建的过滤器时创建
+    private volatile ScheduledExecutorService bloomRebuildExecutor;
+    //每个前缀查询数据库的平均耗时（毫秒），用于计算提前刷新的概率
+    private final Map<String, Double> rebuildCostMillis = new ConcurrentHashMap<>();
+    //按代数失效的命名空间当前的代数
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+    //没有配置刷新策略的前缀：固定过期时间、不提前刷新
+    private static final CacheRefreshProperties.Policy NO_REFRESH_POLICY = new CacheRefreshProperties.Policy();
 
-    //将Java对象序列化为json并存储在string类型的key中，并且可以设置TTL过期时间
+    @PostConstruct
+    private void init(){
+        //订阅布隆过滤器新增消息，其他节点新增数据时同步写入本地的过滤器
+        listenerContainer.addMessageListener((message, pattern) ->
+                        putBloom(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_BLOOM_CHANNEL));
+        //订阅代数变化消息，其他节点失效命名空间后重新读取代数
+        listenerContainer.addMessageListener((message, pattern) ->
+                        generations.remove(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_GENERATION_CHANNEL));
+        if(!localCacheProperties.isEnabled() && !hotKeyDetector.isEnabled()){
+            return;
+        }
+        //1、创建本地缓存，每个条目的过期时间取所属前缀的配置，热点key副本取热点key的配置
+        Caffeine<String, LocalEntry> builder = Caffeine.newBuilder()
+                .expireAfter(new Expiry<String, LocalEntry>() {
+                    @Override
+                    public long expireAfterCreate(String key, LocalEntry entry, long currentTime) {
+                        return entry.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, LocalEntry entry, long currentTime, long currentDuration) {
+                        return entry.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, LocalEntry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats();
+        if(localCacheProperties.getMaximumWeight() > 0){
+            builder.maximumWeight(localCacheProperties.getMaximumWeight()).weigher((key, entry) -> entry.weight);
+        }else{
+            builder.maximumSize(localCacheProperties.getMaximumSize());
+        }
+        localCache = builder.build();
+        //2、订阅缓存失效消息，其他节点删除缓存时同步删除本地缓存
+        listenerContainer.addMessageListener((message, pattern) ->
+                        localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        //3、热点key冷却后删除它的本地副本，前缀本身配置了本地缓存的条目不受影响
+        hotKeyDetector.setDemoteListener(key ->
+                localCache.asMap().computeIfPresent(key, (k, entry) -> entry.replica ? null : entry));
+    }
+
+    //将Java对象编码后存储在string类型的key中，并且可以设置TTL过期时间，TTL按前缀配置随机增加
     public void set(String key,Object value,Long time, TimeUnit unit){
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value),time,unit);
+        writeValue(resolveKey(key), value, time, unit);
     }
 
-    //将Java对象序列化为json并存储在string类型的key中，并且设置逻辑过期时间，用于处理缓存击穿
+    //将Java对象编码后存储在string类型的key中，并且设置逻辑过期时间，用于处理缓存击穿
     public void setWithLogicalExpire(String key,Object value,Long time, TimeUnit unit){
-        //设置逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        //存入redis中
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        writeLogical(resolveKey(key), value, time, unit);
+    }
+
+    //批量写入逻辑过期的数据，使用一次pipeline，用于缓存预热
+    public void setManyWithLogicalExpire(String keyPrefix, Map<?, ?> values, Long time, TimeUnit unit){
+        if(values.isEmpty()){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String prefix = resolvePrefix(keyPrefix);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((id, value) -> {
+                String key = prefix + id;
+                long ttlMillis = jitter(key, unit.toMillis(time));
+                connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), codec.encode(value, now + ttlMillis),
+                        logicalKeyExpiration(keyPrefix, ttlMillis), RedisStringCommands.SetOption.upsert());
+            });
+            return null;
+        });
+    }
+
+    //批量删除缓存，一次DEL删除redis，一次pipeline通知所有节点删除本地缓存
+    public void delete(Collection<String> keys){
+        if(keys.isEmpty()){
+            return;
+        }
+        List<String> resolvedKeys = keys.stream().map(this::resolveKey).collect(Collectors.toList());
+        stringRedisTemplate.delete(resolvedKeys);
+        if(localCache != null){
+            localCache.invalidateAll(resolvedKeys);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                byte[] channel = CACHE_INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8);
+                for (String key : resolvedKeys) {
+                    connection.publish(channel, key.getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 按代数失效整个命名空间：代数加一后所有读写都使用新的key，旧key不再被访问，到期后由redis自动删除
+     * @param namespace 配置在hmdp.cache.generation.namespaces中的key前缀
+     * @return 新的代数
+     */
+    public long invalidateNamespace(String namespace){
+        if(!isVersioned(namespace)){
+            throw new IllegalArgumentException("未配置按代数失效的前缀：" + namespace);
+        }
+        Long current = stringRedisTemplate.opsForValue().increment(CACHE_GENERATION_KEY + namespace);
+        generations.put(namespace, new Generation(current, System.currentTimeMillis()));
+        stringRedisTemplate.convertAndSend(CACHE_GENERATION_CHANNEL, namespace);
+        return current;
+    }
+
+    //删除缓存，同时通知所有节点删除本地缓存
+    public void delete(String key){
+        key = resolveKey(key);
+        stringRedisTemplate.delete(key);
+        if(localCache != null){
+            localCache.invalidate(key);
+            stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+        }
+    }
+
+    /**
+     * 为key前缀注册布隆过滤器，注册后getPathThrough和getWithLogicalExpire会先检查过滤器
+     * 其他节点新增的key通过发布订阅同步，订阅断开期间的消息会丢失，因此每隔一段时间从数据库重建一次
+     * @param prefix key前缀
+     * @param expectedInsertions 预计的数据量
+     * @param fpp 期望的误判率
+     * @param rebuildIntervalMs 重建间隔，小于等于0时不重建
+     * @param idLoader 加载数据库中所有的id，每个id交给传入的Consumer
+     */
+    public void registerBloomFilter(String prefix, long expectedInsertions, double fpp, long rebuildIntervalMs,
+                                    Consumer<Consumer<Object>> idLoader){
+        CacheBloomFilter filter = new CacheBloomFilter(expectedInsertions, fpp);
+        //先注册再加载，加载期间新增的id也能写入；加载完成之前过滤器不拦截
+        bloomFilters.put(prefix, filter);
+        try {
+            idLoader.accept(id -> filter.put(prefix + id));
+            filter.markReady();
+        } catch (RuntimeException e) {
+            bloomFilters.remove(prefix, filter);
+            log.error("加载布隆过滤器失败, prefix={}", prefix, e);
+        }
+        if(rebuildIntervalMs <= 0){
+            return;
+        }
+        synchronized (this){
+            if(bloomRebuildExecutor == null){
+                bloomRebuildExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "cache-bloom-rebuild");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        bloomRebuildExecutor.scheduleWithFixedDelay(() -> rebuildBloomFilter(prefix, expectedInsertions, fpp, idLoader),
+                rebuildIntervalMs, rebuildIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    //在新的过滤器中重新加载所有id，加载完成后替换旧的过滤器；加载期间新增的key同时写入新旧两个过滤器
+    private void rebuildBloomFilter(String prefix, long expectedInsertions, double fpp, Consumer<Consumer<Object>> idLoader){
+        CacheBloomFilter filter = new CacheBloomFilter(expectedInsertions, fpp);
+        rebuildingBloomFilters.put(prefix, filter);
+        try {
+            long begin = System.currentTimeMillis();
+            idLoader.accept(id -> filter.put(prefix + id));
+            filter.markReady();
+            bloomFilters.put(prefix, filter);
+            log.info("布隆过滤器重建完成, prefix={}, 耗时{}ms", prefix, System.currentTimeMillis() - begin);
+        } catch (RuntimeException e) {
+            log.error("重建布隆过滤器失败，继续使用旧的过滤器, prefix={}", prefix, e);
+        } finally {
+            rebuildingBloomFilters.remove(prefix, filter);
+        }
+    }
+
+    @PreDestroy
+    private void destroy(){
+        if(bloomRebuildExecutor != null){
+            bloomRebuildExecutor.shutdownNow();
+        }
+    }
+
+    //新增数据后写入布隆过滤器，并通知其他节点
+    public void addToBloomFilter(String prefix, Object id){
+        if(!bloomFilters.containsKey(prefix)){
+            return;
+        }
+        String key = prefix + id;
+        putBloom(key);
+        stringRedisTemplate.convertAndSend(CACHE_BLOOM_CHANNEL, key);
     }
 
     //根据指定的key查询缓存，并反序列化为指定类型，利用缓存空值方式解决缓存穿透问题
                                         // key前缀，id，返回类型，数据库查询方法，缓存时间，时间单位
     public <R,ID> R getPathThrough(String keyPrefix, ID id, Class<R> type, Function<ID,R> dbFallback, Long time, TimeUnit unit){
-        //1、首先查询redis看是否有信息
-        String key = keyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
-        //2、1 redis中如果查到直接返回
-        if(StrUtil.isNotBlank(json)){
-            return JSONUtil.toBean(json, type);
+        //1、首先查询本地缓存，再检查布隆过滤器，最后查询redis看是否有信息
+        String key = resolvePrefix(keyPrefix) + id;
+        hotKeyDetector.record(key);
+        LocalEntry local = getLocal(key);
+        if(local != null){
+            return localValue(local, type);
         }
-        //2、2 此时redis中没查到需判断是不是""是的话也直接返回
-        if(json != null){
+        CacheBloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if(bloomFilter != null && !bloomFilter.mightContain(keyPrefix + id)){
             return null;
         }
-        //3、没查到去数据库中查
-        R r = dbFallback.apply(id);
-        //4、数据库中也没有直接返回404(redis中设置为"")
-        if(r == null){
-            stringRedisTemplate.opsForValue().set(key,"",CACHE_NULL_TTL,TimeUnit.MINUTES);
+        byte[] bytes = getBytes(key);
+        //2、1 redis中如果查到直接返回，数据结构已经变化无法解码时当作没查到
+        if(bytes != null && bytes.length > 0){
+            CacheValue<R> cacheValue = decode(bytes, type);
+            if(cacheValue != null){
+                putLocal(keyPrefix, key, cacheValue.getValue(), Long.MAX_VALUE, bytes.length);
+                return cacheValue.getValue();
+            }
+        }
+        //2、2 此时redis中没查到需判断是不是""是的话也直接返回
+        else if(bytes != null){
+            if(bloomFilter != null){
+                bloomFilter.recordFalsePositive();
+            }
             return null;
         }
-        //5、数据库有则存到redis中
-       this.set(key,r,time,unit);
-        //6、返回给前端
-        return r;
+        //3、没查到去数据库中查，数据库有则存到redis中
+        return loadOnce(keyPrefix, key, id, type, dbFallback, bloomFilter, r -> writeValue(key, r, time, unit));
+    }
+
+    /**
+     * 查询数据库并写入缓存，本节点已经有线程在查同一个key时直接等待它的结果
+     * 数据库中也没有时redis中设置为""，防止缓存穿透
+     */
+    private <R,ID> R loadOnce(String keyPrefix, String key, ID id, Class<R> type, Function<ID,R> dbFallback,
+                              CacheBloomFilter bloomFilter, Consumer<R> writer){
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadingKeys.putIfAbsent(key, future);
+        if(loading != null){
+            return type.cast(join(loading));
+        }
+        try {
+            R r = load(keyPrefix, () -> dbFallback.apply(id));
+            if(r == null){
+                stringRedisTemplate.opsForValue().set(key,"",CACHE_NULL_TTL,TimeUnit.MINUTES);
+                if(bloomFilter != null){
+                    bloomFilter.recordFalsePositive();
+                }
+            }else{
+                writer.accept(r);
+            }
+            future.complete(r);
+            return r;
+        } catch (Throwable e) {
+            //Error也要通知等待的线程，否则它们会一直阻塞在join上
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingKeys.remove(key, future);
+        }
     }
 
 
     //根据指定的key查询缓存，并反序列化为指定类型，利用逻辑过期解决缓存击穿问题
     public <R,ID> R getWithLogicalExpire(String prefix,ID id,Class<R> type,Function<ID,R> dbFallback,Long time, TimeUnit unit){
-        //1、首先查询redis看是否有商铺信息
-        String key = prefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
-        //2redis中如果没查到直接返回null
-        if(StrUtil.isBlank(json)){
-            //3、不存在，直接返回
+        //1、首先查询本地缓存，本地缓存没有逻辑过期直接返回
+        String key = resolvePrefix(prefix) + id;
+        hotKeyDetector.record(key);
+        LocalEntry local = getLocal(key);
+        if(local != null && local.logicalExpireMillis > System.currentTimeMillis()
+                && !refreshEarly(prefix, local.logicalExpireMillis)){
+            return localValue(local, type);
+        }
+        //布隆过滤器判断不存在时直接返回
+        CacheBloomFilter bloomFilter = bloomFilters.get(prefix);
+        if(bloomFilter != null && !bloomFilter.mightContain(prefix + id)){
             return null;
         }
-        //4、命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
+        //查询redis看是否有商铺信息
+        return getWithLogicalExpire(prefix, key, id, getBytes(key), bloomFilter, type, dbFallback, time, unit);
+    }
+
+    //已经读到redis中的数据之后的逻辑过期处理：未命中时重建，过期时返回旧数据并异步重建
+    private <R,ID> R getWithLogicalExpire(String prefix, String key, ID id, byte[] bytes, CacheBloomFilter bloomFilter,
+                                          Class<R> type, Function<ID,R> dbFallback, Long time, TimeUnit unit){
+        //2redis中没有数据
+        if(bytes == null || bytes.length == 0){
+            //2、1key不存在：按代数失效的前缀切换了代数，或者key很久没有访问已经被redis删除，需要查询数据库重建
+            if(bytes == null){
+                return loadOnce(prefix, key, id, type, dbFallback, bloomFilter, r -> writeLogical(key, r, time, unit));
+            }
+            //3、空值，直接返回
+            return null;
+        }
+        //4、命中，需要先把数据解码为对象
+        CacheValue<R> cacheValue = decode(bytes, type);
+        if(cacheValue == null){
+            //4、1数据结构已经变化无法解码，直接查询数据库重建缓存
+            R r = load(prefix, () -> dbFallback.apply(id));
+            if(r != null){
+                writeLogical(key, r, time, unit);
+            }
+            return r;
+        }
+        R r = cacheValue.getValue();
+        long expireMillis = cacheValue.getExpireMillis();
         //5、判断是否过期
-        if(expireTime.isAfter(LocalDateTime.now())){//没过期
-            //5.1未过期，直接返回
+        if(isFresh(expireMillis) && !refreshEarly(prefix, expireMillis)){//没过期
+            //5.1未过期，放入本地缓存后直接返回
+            putLocal(prefix, key, r, expireMillis == 0 ? Long.MAX_VALUE : expireMillis, bytes.length);
             return r;
         }
-        //5.2已过期，缓存重建
-        //6、缓存重建
-        String lockKey = LOCK_SHOP_KEY + id;
+        //5.2已过期或者需要提前刷新，缓存重建
+        //6、缓存重建，本节点已经有线程在重建时直接返回旧数据，不再去抢redis锁
+        if(!rebuildingKeys.add(key)){
+            return r;
+        }
+        String lockKey = lockKey(prefix, id);
         //6、1获取互斥锁
         boolean flag = tryLock(lockKey);
+        if(!flag){
+            rebuildingKeys.remove(key);
+            return r;
+        }
+        //6、2获取成功，做doublecheck判断其他线程是否已经重建过，只读取头部的过期时间
+        byte[] bytesDouble = getBytes(key);
+        long expireMillisDouble = bytesDouble == null || bytesDouble.length == 0 ? expireMillis : readExpireMillis(bytesDouble);
+        if(expireMillisDouble != expireMillis && isFresh(expireMillisDouble)){
+            //已经重建过
+            CacheValue<R> cacheValueDouble = decode(bytesDouble, type);
+            if(cacheValueDouble != null){
+                unLock(lockKey);
+                rebuildingKeys.remove(key);
+                return cacheValueDouble.getValue();
+            }
+        }
+        //6、3提交到重建线程池，重建缓存
+        boolean submitted = rebuildExecutor.submit(key, () -> {
+            try {
+                //1、1 查询数据库
+                R r2 = load(prefix, () -> dbFallback.apply(id));
+                //1、2重建缓存
+                writeLogical(key, r2, time, unit);
+            } finally {
+                //2、子线程干完活后，由子线程释放锁
+                unLock(lockKey);
+                rebuildingKeys.remove(key);
+            }
+        });
+        if(!submitted){
+            //队列已满，放弃这次重建，释放锁后返回旧数据
+            unLock(lockKey);
+            rebuildingKeys.remove(key);
+        }
+        //6、4返回旧数据
+        return r;
+    }
+
+    /**
+     * 查询逻辑过期缓存中对象的json，调用方直接写入响应
+     * 本地缓存或redis中的json没有过期时原样返回，本地缓存中只有对象时序列化一次后保存在本地缓存条目中；
+     * redis中的数据无法直接输出（二进制格式）、未命中或者过期时，用已经读到的数据走getWithLogicalExpire的处理，不再重复访问redis
+     * @return 对象的json，数据不存在时返回null
+     */
+    public <R,ID> RawJson getJsonWithLogicalExpire(String prefix, ID id, Class<R> type, Function<ID,R> dbFallback,
+                                                   Long time, TimeUnit unit){
+        String key = resolvePrefix(prefix) + id;
+        hotKeyDetector.record(key);
+        //1、本地缓存没有逻辑过期时直接返回，热点key由本地缓存挡住
+        LocalEntry local = getLocal(key);
+        if(local != null && local.logicalExpireMillis > System.currentTimeMillis()
+                && !refreshEarly(prefix, local.logicalExpireMillis)){
+            RawJson json = localJson(local);
+            if(json != null){
+                return json;
+            }
+        }
+        CacheBloomFilter bloomFilter = bloomFilters.get(prefix);
+        if(bloomFilter != null && !bloomFilter.mightContain(prefix + id)){
+            return null;
+        }
+        //2、查询redis，数据部分是json并且没有过期时原样返回，同时放入本地缓存
+        byte[] bytes = getBytes(key);
+        RawJson json = bytes == null || bytes.length == 0 ? null : readJson(bytes);
+        if(json != null && isFresh(json.getExpireMillis()) && !refreshEarly(prefix, json.getExpireMillis())){
+            putLocal(prefix, key, null, json, json.getExpireMillis() == 0 ? Long.MAX_VALUE : json.getExpireMillis(), bytes.length);
+            return json;
+        }
+        //3、其他情况按对象处理，结果序列化为json
+        R r = getWithLogicalExpire(prefix, key, id, bytes, bloomFilter, type, dbFallback, time, unit);
+        return r == null ? null : toRawJson(r, 0);
+    }
 
-        //6、2获取成功，开启独立线程，缓存重建
-        if(flag){
-            //做doublecheck判断当前缓存数据是否过期
-            String shopJsonDouble = stringRedisTemplate.opsForValue().get(key);
-            if(StrUtil.isNotBlank(shopJsonDouble)){
-                //再做一次失效时间判断
-                RedisData redisDataDouble = JSONUtil.toBean(shopJsonDouble, RedisData.class);
-                R r1 = JSONUtil.toBean((JSONObject) redisDataDouble.getData(), type);
-                LocalDateTime doubleExpireTime = redisDataDouble.getExpireTime();
-                if(doubleExpireTime.isAfter(LocalDateTime.now())){//没失效
-                    return r1;
+    /**
+     * 批量查询缓存：一次MGET读取所有key，未命中的id合并为一次数据库查询，再用一次pipeline写回redis；
+     * 逻辑过期或者需要提前刷新的数据和getWithLogicalExpire一样先返回旧数据，抢到互斥锁的id合并为一个任务异步重建。
+     * 布隆过滤器判断不存在的id不查询redis。写回的数据和setWithLogicalExpire格式一致，可以和getWithLogicalExpire共用同一个前缀
+     * @param keyPrefix key前缀
+     * @param ids 要查询的id
+     * @param type 返回类型
+     * @param batchDbFallback 根据一批id查询数据库，返回 id -> 数据
+     * @return 按ids的顺序返回，不存在的id不包含在结果中
+     */
+    public <R,ID> List<R> getMany(String keyPrefix, List<ID> ids, Class<R> type,
+                                  Function<Collection<ID>, Map<ID,R>> batchDbFallback, Long time, TimeUnit unit){
+        if(ids == null || ids.isEmpty()){
+            return new ArrayList<>();
+        }
+        Map<ID, R> found = new HashMap<>(ids.size() * 2);
+        String prefix = resolvePrefix(keyPrefix);
+        //1、先查本地缓存，布隆过滤器判断不存在的id跳过，剩下的id用一次MGET查询redis
+        CacheBloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            hotKeyDetector.record(prefix + id);
+            LocalEntry local = getLocal(prefix + id);
+            R value = local != null && local.logicalExpireMillis > System.currentTimeMillis() ? localValue(local, type) : null;
+            if(value != null){
+                found.put(id, value);
+            }else if(bloomFilter == null || bloomFilter.mightContain(keyPrefix + id)){
+                remoteIds.add(id);
+            }
+        }
+        Set<ID> missIds = new LinkedHashSet<>();
+        Set<ID> staleIds = new LinkedHashSet<>();
+        if(!remoteIds.isEmpty()){
+            byte[][] rawKeys = new byte[remoteIds.size()][];
+            for (int i = 0; i < rawKeys.length; i++) {
+                rawKeys[i] = (prefix + remoteIds.get(i)).getBytes(StandardCharsets.UTF_8);
+            }
+            List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.stringCommands().mGet(rawKeys));
+            for (int i = 0; i < remoteIds.size(); i++) {
+                ID id = remoteIds.get(i);
+                byte[] bytes = values == null ? null : values.get(i);
+                //2、空值表示数据库中不存在，直接跳过
+                if(bytes != null && bytes.length == 0){
+                    continue;
+                }
+                CacheValue<R> cacheValue = bytes == null ? null : decode(bytes, type);
+                //3、没查到、无法解码时查询数据库；逻辑过期或者需要提前刷新时返回旧数据，之后异步重建
+                if(cacheValue == null){
+                    missIds.add(id);
+                    continue;
+                }
+                if(!isFresh(cacheValue.getExpireMillis()) || refreshEarly(keyPrefix, cacheValue.getExpireMillis())){
+                    staleIds.add(id);
+                    found.put(id, cacheValue.getValue());
+                    continue;
                 }
+                long expireMillis = cacheValue.getExpireMillis();
+                putLocal(keyPrefix, prefix + id, cacheValue.getValue(), expireMillis == 0 ? Long.MAX_VALUE : expireMillis, bytes.length);
+                found.put(id, cacheValue.getValue());
             }
-            //新建一个线程，重建缓存
-            // 新建一个线程，重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 1. 重建缓存
-                    //1、1 查询数据库
-                    R r2 = dbFallback.apply(id);
-                    //1、2重建缓存
-                    this.setWithLogicalExpire(key,r2,time,unit);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } finally {
-                    // 2. ⚠️ 关键修改：子线程干完活后，由子线程释放锁！
-                    unLock(lockKey);
+        }
+        //4、未命中的id合并为一次数据库查询，结果用一次pipeline写回redis
+        if(!missIds.isEmpty()){
+            Map<ID, R> loaded = load(keyPrefix, () -> batchDbFallback.apply(missIds));
+            writeMany(keyPrefix, prefix, missIds, loaded, time, unit);
+            missIds.forEach(id -> {
+                R r = loaded == null ? null : loaded.get(id);
+                if(r != null){
+                    found.put(id, r);
                 }
             });
         }
-        //6、3获取失败返回旧数据
-        //6、4返回旧数据（无论成功与否）
-        return r;
+        //5、过期的id异步重建
+        if(!staleIds.isEmpty()){
+            rebuildManyAsync(keyPrefix, prefix, staleIds, batchDbFallback, time, unit);
+        }
+        //6、按传入的顺序返回
+        List<R> result = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if(r != null){
+                result.add(r);
+            }
+        }
+        return result;
     }
 
+    /**
+     * 异步重建一批逻辑过期的数据：本节点正在重建的id跳过，其余id用一次pipeline抢每个key的互斥锁，
+     * 抢到锁的id合并为一次数据库查询提交到重建线程池，队列已满时释放锁放弃这次重建
+     */
+    private <R,ID> void rebuildManyAsync(String keyPrefix, String prefix, Set<ID> staleIds,
+                                         Function<Collection<ID>, Map<ID,R>> batchDbFallback, Long time, TimeUnit unit){
+        //1、本节点已经有线程在重建的key不再抢锁
+        List<ID> candidates = new ArrayList<>(staleIds.size());
+        for (ID id : staleIds) {
+            if(rebuildingKeys.add(prefix + id)){
+                candidates.add(id);
+            }
+        }
+        if(candidates.isEmpty()){
+            return;
+        }
+        //2、一次pipeline获取所有互斥锁
+        Expiration lockExpiration = Expiration.seconds(10);
+        List<Object> locked = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : candidates) {
+                connection.stringCommands().set(lockKey(keyPrefix, id).getBytes(StandardCharsets.UTF_8), "1".getBytes(StandardCharsets.UTF_8),
+                        lockExpiration, RedisStringCommands.SetOption.ifAbsent());
+            }
+            return null;
+        });
+        List<ID> rebuildIds = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            if(Boolean.TRUE.equals(locked.get(i))){
+                rebuildIds.add(candidates.get(i));
+            }else{
+                rebuildingKeys.remove(prefix + candidates.get(i));
+            }
+        }
+        if(rebuildIds.isEmpty()){
+            return;
+        }
+        //3、提交到重建线程池，子线程重建完成后释放锁
+        Runnable release = () -> {
+            List<String> lockKeys = new ArrayList<>(rebuildIds.size());
+            for (ID id : rebuildIds) {
+                lockKeys.add(lockKey(keyPrefix, id));
+            }
+            stringRedisTemplate.delete(lockKeys);
+            rebuildIds.forEach(id -> rebuildingKeys.remove(prefix + id));
+        };
+        boolean submitted = rebuildExecutor.submit(prefix + rebuildIds, () -> {
+            try {
+                Map<ID, R> loaded = load(keyPrefix, () -> batchDbFallback.apply(rebuildIds));
+                writeMany(keyPrefix, prefix, rebuildIds, loaded, time, unit);
+            } finally {
+                release.run();
+            }
+        });
+        if(!submitted){
+            release.run();
+        }
+    }
+
+    //一次pipeline写回一批数据，数据库中不存在的id写入空值防止缓存穿透
+    private <R,ID> void writeMany(String keyPrefix, String prefix, Collection<ID> ids, Map<ID, R> loaded, Long time, TimeUnit unit){
+        long now = System.currentTimeMillis();
+        Expiration nullExpiration = Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : ids) {
+                byte[] rawKey = (prefix + id).getBytes(StandardCharsets.UTF_8);
+                R r = loaded == null ? null : loaded.get(id);
+                if(r == null){
+                    connection.stringCommands().set(rawKey, new byte[0], nullExpiration, RedisStringCommands.SetOption.upsert());
+                }else{
+                    long ttlMillis = jitter(keyPrefix, unit.toMillis(time));
+                    connection.stringCommands().set(rawKey, codec.encode(r, now + ttlMillis),
+                            logicalKeyExpiration(keyPrefix, ttlMillis), RedisStringCommands.SetOption.upsert());
+                }
+            }
+            return null;
+        });
+    }
+
+    //本地缓存的命中统计
+    public Map<String, Object> localCacheStats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", localCache != null);
+        if(localCache == null){
+            return stats;
+        }
+        CacheStats cacheStats = localCache.stats();
+        stats.put("size", localCache.estimatedSize());
+        stats.put("hitCount", cacheStats.hitCount());
+        stats.put("missCount", cacheStats.missCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        stats.put("evictionCount", cacheStats.evictionCount());
+        return stats;
+    }
+
+    //每个前缀布隆过滤器的拦截和误判统计
+    public Map<String, Object> bloomFilterStats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        bloomFilters.forEach((prefix, filter) -> stats.put(prefix, filter.stats()));
+        return stats;
+    }
+
+    //写入key所属前缀的布隆过滤器；先写正在重建的过滤器，重建完成替换之后再写入的key一定会进入新的过滤器
+    private void putBloom(String key){
+        rebuildingBloomFilters.forEach((prefix, filter) -> {
+            if(key.startsWith(prefix)){
+                filter.put(key);
+            }
+        });
+        bloomFilters.forEach((prefix, filter) -> {
+            if(key.startsWith(prefix)){
+                filter.put(key);
+            }
+        });
+    }
+
+    //查询本地缓存
+    private LocalEntry getLocal(String key){
+        return localCache == null ? null : localCache.getIfPresent(key);
+    }
+
+    //本地缓存中的对象，只有json时解码一次后保存在条目中
+    private <R> R localValue(LocalEntry local, Class<R> type){
+        Object value = local.value;
+        if(value == null && local.json != null){
+            RawJson json = local.json;
+            try {
+                value = objectMapper.readValue(json.getBytes(), json.getOffset(), json.getLength(), type);
+            } catch (IOException e) {
+                throw new IllegalStateException("本地缓存对象解码失败：" + type, e);
+            }
+            local.value = value;
+        }
+        return type.cast(value);
+    }
+
+    //本地缓存中对象的json，只有对象时序列化一次后保存在条目中
+    private RawJson localJson(LocalEntry local){
+        RawJson json = local.json;
+        if(json == null && local.value != null){
+            json = toRawJson(local.value, local.logicalExpireMillis);
+            local.json = json;
+        }
+        return json;
+    }
+
+    //用和接口响应相同的ObjectMapper序列化，时间格式和忽略null属性的规则与Jackson输出的Result一致
+    private RawJson toRawJson(Object value, long expireMillis){
+        byte[] bytes;
+        try {
+            bytes = objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("缓存对象序列化失败：" + value.getClass(), e);
+        }
+        return new RawJson(bytes, 0, bytes.length, expireMillis);
+    }
+
+    //按数据头部选择格式读取其中的json，无法直接读取时返回null
+    private RawJson readJson(byte[] bytes){
+        for (CacheCodec readCodec : readCodecs) {
+            if(readCodec.canDecode(bytes)){
+                return readCodec.readJson(bytes);
+            }
+        }
+        return null;
+    }
+
+    private void putLocal(String prefix, String key, Object value, long logicalExpireMillis, int weight){
+        putLocal(prefix, key, value, null, logicalExpireMillis, weight);
+    }
+
+    //写入本地缓存，只有配置了本地缓存时间的前缀和热点key才会写入；value和json至少有一个不为null
+    private void putLocal(String prefix, String key, Object value, RawJson json, long logicalExpireMillis, int weight){
+        if(localCache == null){
+            return;
+        }
+        Duration ttl = localCacheProperties.isEnabled() ? localCacheProperties.getTtl().get(prefix) : null;
+        boolean replica = false;
+        if(ttl == null){
+            if(!hotKeyDetector.isHot(key)){
+                return;
+            }
+            ttl = hotKeyDetector.getReplicaTtl();
+            replica = true;
+        }
+        localCache.put(key, new LocalEntry(value, json, logicalExpireMillis, ttl.toNanos(), weight, replica));
+    }
+
+    //查询数据库，并按前缀记录耗时的滑动平均值
+    private <T> T load(String prefix, Supplier<T> dbFallback){
+        long begin = System.nanoTime();
+        try {
+            return dbFallback.get();
+        } finally {
+            double cost = (System.nanoTime() - begin) / 1_000_000D;
+            rebuildCostMillis.merge(prefix, cost, (old, current) -> old * 0.8 + current * 0.2);
+        }
+    }
+
+    //按key所属前缀的配置随机增加过期时间
+    private long jitter(String key, long ttlMillis){
+        double ratio = policyOf(key).getJitter();
+        if(ratio <= 0){
+            return ttlMillis;
+        }
+        return ttlMillis + (long) (ttlMillis * ratio * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * 判断未过期的数据是否需要提前刷新：now - 重建耗时 * beta * ln(random) >= 过期时间
+     * 离过期越近、重建越慢，提前刷新的概率越大
+     */
+    private boolean refreshEarly(String prefix, long expireMillis){
+        if(expireMillis == 0 || expireMillis == Long.MAX_VALUE){
+            return false;
+        }
+        double beta = policyOf(prefix).getBeta();
+        Double cost = rebuildCostMillis.get(prefix);
+        if(beta <= 0 || cost == null){
+            return false;
+        }
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+        return System.currentTimeMillis() - cost * beta * Math.log(random) >= expireMillis;
+    }
+
+    //查找key所属前缀的刷新策略，多个前缀匹配时取最长的，例如 cache:shop:type 优先于 cache:shop:
+    private CacheRefreshProperties.Policy policyOf(String key){
+        CacheRefreshProperties.Policy policy = NO_REFRESH_POLICY;
+        int matched = -1;
+        for (Map.Entry<String, CacheRefreshProperties.Policy> entry : refreshProperties.getPolicies().entrySet()) {
+            if(key.startsWith(entry.getKey()) && entry.getKey().length() > matched){
+                policy = entry.getValue();
+                matched = entry.getKey().length();
+            }
+        }
+        return policy;
+    }
+
+    //逻辑过期时间为0表示没有逻辑过期
+    private static boolean isFresh(long expireMillis){
+        return expireMillis == 0 || expireMillis > System.currentTimeMillis();
+    }
+
+    //按数据头部选择能解码的格式，兼容升级前写入的json数据
+    private <R> CacheValue<R> decode(byte[] bytes, Class<R> type){
+        for (CacheCodec readCodec : readCodecs) {
+            if(readCodec.canDecode(bytes)){
+                return readCodec.decode(bytes, type);
+            }
+        }
+        return null;
+    }
+
+    private long readExpireMillis(byte[] bytes){
+        for (CacheCodec readCodec : readCodecs) {
+            if(readCodec.canDecode(bytes)){
+                return readCodec.readExpireMillis(bytes);
+            }
+        }
+        return 0;
+    }
+
+    //以字节形式读取缓存
+    private byte[] getBytes(String key){
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+    }
+
+    //以字节形式写入缓存
+    private void setBytes(String key, byte[] value, Expiration expiration){
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().set(rawKey, value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
+    //写入带TTL的数据，key已经带有代数
+    private void writeValue(String key, Object value, Long time, TimeUnit unit){
+        setBytes(key, codec.encode(value, 0), Expiration.milliseconds(jitter(key, unit.toMillis(time))));
+    }
+
+    //写入逻辑过期的数据，key已经带有代数
+    private void writeLogical(String key, Object value, Long time, TimeUnit unit){
+        long ttlMillis = jitter(key, unit.toMillis(time));
+        setBytes(key, codec.encode(value, System.currentTimeMillis() + ttlMillis), logicalKeyExpiration(key, ttlMillis));
+    }
+
+    /**
+     * 逻辑过期数据在redis中的过期时间：按代数失效的前缀需要让旧代数的key自动删除；
+     * 其他前缀取逻辑过期时间的若干倍，过期后仍然可以返回旧数据并异步重建，很久没有访问的key由redis删除
+     */
+    private Expiration logicalKeyExpiration(String key, long logicalTtlMillis){
+        for (String namespace : generationProperties.getNamespaces()) {
+            if(key.startsWith(namespace)){
+                return Expiration.milliseconds(generationProperties.getKeyTtl().toMillis());
+            }
+        }
+        return Expiration.milliseconds(logicalTtlMillis * logicalTtlMultiplier);
+    }
+
+    private boolean isVersioned(String prefix){
+        return generationProperties.getNamespaces().contains(prefix);
+    }
+
+    //带有当前代数的前缀，cache:shop: 对应 cache:shop:g3:
+    private String resolvePrefix(String prefix){
+        return isVersioned(prefix) ? prefix + "g" + generation(prefix) + ":" : prefix;
+    }
+
+    //给完整的key加上当前代数，cache:shop:1 对应 cache:shop:g3:1
+    private String resolveKey(String key){
+        for (String namespace : generationProperties.getNamespaces()) {
+            if(key.startsWith(namespace)){
+                return resolvePrefix(namespace) + key.substring(namespace.length());
+            }
+        }
+        return key;
+    }
+
+    //命名空间的当前代数，本地缓存一段时间，过期或者收到代数变化的消息后重新从redis读取
+    private long generation(String namespace){
+        Generation generation = generations.get(namespace);
+        long now = System.currentTimeMillis();
+        if(generation != null && now - generation.loadedAt < generationProperties.getRefreshInterval().toMillis()){
+            return generation.value;
+        }
+        String value = stringRedisTemplate.opsForValue().get(CACHE_GENERATION_KEY + namespace);
+        long current = value == null ? 0 : Long.parseLong(value);
+        generations.put(namespace, new Generation(current, now));
+        return current;
+    }
+
+    //重建锁的key由缓存前缀推导，cache:shop:1对应lock:shop:1
+    private static String lockKey(String prefix, Object id){
+        return LOCK_KEY + StrUtil.removePrefix(prefix, "cache:") + id;
+    }
+
+    //等待其他线程的数据库查询结果，查询抛出的异常原样抛给等待的线程
+    private static Object join(CompletableFuture<Object> future){
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
 
     //尝试获取锁
     private boolean tryLock(String key){
@@ -148,4 +953,39 @@ public class CacheClient {
         stringRedisTemplate.delete(key);
     }
 
+    /**
+     * 本地缓存的命名空间代数和读取时间
+     */
+    private static class Generation {
+        private final long value;
+        private final long loadedAt;
+
+        Generation(long value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * 本地缓存条目：缓存对象、逻辑过期时间、本地缓存时间、估算的字节数以及是否是热点key的副本
+     */
+    private static class LocalEntry {
+        //对象和json，只写入了其中一个时另一个在第一次使用时生成
+        private volatile Object value;
+        private volatile RawJson json;
+        private final long logicalExpireMillis;
+        private final long ttlNanos;
+        private final int weight;
+        private final boolean replica;
+
+        LocalEntry(Object value, RawJson json, long logicalExpireMillis, long ttlNanos, int weight, boolean replica) {
+            this.value = value;
+            this.json = json;
+            this.logicalExpireMillis = logicalExpireMillis;
+            this.ttlNanos = ttlNanos;
+            this.weight = weight;
+            this.replica = replica;
+        }
+    }
+
 }
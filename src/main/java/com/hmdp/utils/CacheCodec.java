@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+/**
+ * CacheClient写入redis的数据格式
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码
+     * @param value 缓存的对象
+     * @param expireMillis 逻辑过期时间的毫秒数，0表示没有逻辑过期时间
+     * @return 写入redis的字节
+     */
+    byte[] encode(Object value, long expireMillis);
+
+    /**
+     * 是否能解码这段数据
+     * @param bytes redis中的字节
+     * @return true表示能解码
+     */
+    boolean canDecode(byte[] bytes);
+
+    /**
+     * 只读取逻辑过期时间，不解析缓存的对象
+     * @param bytes redis中的字节
+     * @return 逻辑过期时间的毫秒数，0表示没有逻辑过期时间
+     */
+    long readExpireMillis(byte[] bytes);
+
+    /**
+     * 解码
+     * @param bytes redis中的字节
+     * @param type 缓存对象的类型
+     * @return 缓存的数据，数据结构和type不一致时返回null
+     */
+    <R> CacheValue<R> decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 不解码对象，直接找到数据中缓存对象的json
+     * @param bytes redis中的字节
+     * @return 缓存对象的json，和接口响应的格式一致；数据部分不是json或者格式和接口响应不一致时返回null
+     */
+    RawJson readJson(byte[] bytes);
+}
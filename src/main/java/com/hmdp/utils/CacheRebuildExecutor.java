@@ -0,0 +1,124 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建线程池
+ * 队列有界，同一个key在排队或执行中时不会重复提交；队列满时拒绝任务，由调用方返回旧数据。
+ * 记录队列长度、排队耗时和执行耗时，随Spring容器关闭
+ */
+@Component
+@Slf4j
+public class CacheRebuildExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    //排队或执行中的key
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxRunNanos = new LongAccumulator(Math::max, 0);
+
+    public CacheRebuildExecutor(@Value("${hmdp.cache.rebuild.threads:10}") int threads,
+                                @Value("${hmdp.cache.rebuild.queue-capacity:1000}") int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "cache-rebuild-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交重建任务
+     * @param key 缓存key，同一个key同时只有一个任务
+     * @param task 重建任务
+     * @return false表示任务没有提交（已经有相同key的任务或者队列已满），调用方需要自己释放锁并返回旧数据
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        long submitTime = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long startTime = System.nanoTime();
+                record(waitNanos, maxWaitNanos, startTime - submitTime);
+                try {
+                    task.run();
+                    completed.increment();
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("重建缓存失败, key={}", key, e);
+                } finally {
+                    pendingKeys.remove(key);
+                    record(runNanos, maxRunNanos, System.nanoTime() - startTime);
+                }
+            });
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            rejected.increment();
+            return false;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long completedCount = completed.sum() + failed.sum();
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("activeCount", executor.getActiveCount());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("completed", completed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgWaitMillis", completedCount == 0 ? 0D : waitNanos.sum() / 1_000_000D / completedCount);
+        stats.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000D);
+        stats.put("avgRunMillis", completedCount == 0 ? 0D : runNanos.sum() / 1_000_000D / completedCount);
+        stats.put("maxRunMillis", maxRunNanos.get() / 1_000_000D);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        //不再接收新任务，等待正在执行的重建完成
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("缓存重建任务未在5秒内完成，剩余{}个任务被丢弃", executor.shutdownNow().size());
+        }
+    }
+
+    private static void record(LongAdder total, LongAccumulator max, long nanos) {
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+}
@@ -0,0 +1,16 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 从缓存中解码出的数据
+ */
+@Data
+@AllArgsConstructor
+public class CacheValue<R> {
+    //缓存的对象
+    private R value;
+    //逻辑过期时间的毫秒数，0表示没有逻辑过期时间
+    private long expireMillis;
+}
@@ -0,0 +1,218 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动预热
+ * 应用对外提供服务之前，并行加载商铺类型、热门商铺、秒杀库存和商铺地理位置；
+ * 所有任务共享一个时间预算，超时的任务被取消，应用照常启动，没有预热的数据由正常的缓存逻辑加载
+ */
+@Component
+@Slf4j
+public class CacheWarmupRunner implements ApplicationRunner {
+
+    @Value("${hmdp.warmup.enabled:false}")
+    private boolean enabled;
+    //所有预热任务的总时间预算
+    @Value("${hmdp.warmup.timeout:30s}")
+    private Duration timeout;
+    //预热的热门商铺数量，按评论数排序
+    @Value("${hmdp.warmup.top-shops:100}")
+    private int topShops;
+    //订单队列的分区数量，决定秒杀库存key所在的分区
+    @Value("${hmdp.seckill.order.partitions:1}")
+    private int partitions;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private IShopTypeService shopTypeService;
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private ShopGeoStore shopGeoStore;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    //每个任务的进度
+    private final Map<String, Progress> progresses = new LinkedHashMap<>();
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        //1、创建预热任务
+        Map<String, Function<Progress, Long>> tasks = new LinkedHashMap<>();
+        tasks.put("shopTypes", this::warmShopTypes);
+        tasks.put("topShops", this::warmTopShops);
+        tasks.put("seckillStock", this::warmSeckillStock);
+        tasks.put("shopGeo", this::warmShopGeo);
+        //2、并行执行
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size(), runnable -> {
+            Thread thread = new Thread(runnable, "cache-warmup-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long begin = System.currentTimeMillis();
+        Map<String, Future<Long>> futures = new LinkedHashMap<>();
+        tasks.forEach((name, task) -> {
+            Progress progress = new Progress();
+            synchronized (progresses) {
+                progresses.put(name, progress);
+            }
+            futures.put(name, executor.submit(() -> {
+                progress.state = "running";
+                try {
+                    long count = task.apply(progress);
+                    progress.finish("done");
+                    return count;
+                } catch (RuntimeException e) {
+                    progress.finish("failed");
+                    throw e;
+                }
+            }));
+        });
+        //3、在时间预算内等待所有任务，超时的任务取消
+        long deadline = begin + timeout.toMillis();
+        futures.forEach((name, future) -> {
+            Progress progress = progresses.get(name);
+            try {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                progress.finish("timeout");
+            } catch (ExecutionException e) {
+                log.error("预热任务{}失败", name, e.getCause());
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                progress.finish("interrupted");
+                Thread.currentThread().interrupt();
+            }
+            log.info("预热任务{} {}，处理{}条，耗时{}ms", name, progress.state, progress.count.get(), progress.elapsedMillis);
+        });
+        executor.shutdownNow();
+        log.info("缓存预热结束，耗时{}ms", System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 每个预热任务的状态、处理条数和耗时
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        synchronized (progresses) {
+            progresses.forEach((name, progress) -> {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("state", progress.state);
+                item.put("count", progress.count.get());
+                item.put("elapsedMillis", progress.state.equals("running")
+                        ? System.currentTimeMillis() - progress.startMillis : progress.elapsedMillis);
+                status.put(name, item);
+            });
+        }
+        return status;
+    }
+
+    //商铺类型：加载内存快照
+    private long warmShopTypes(Progress progress) {
+        List<?> types = shopTypeService.queryAllList();
+        progress.count.set(types == null ? 0 : types.size());
+        return progress.count.get();
+    }
+
+    //热门商铺：按评论数取前N个，用一次pipeline写入逻辑过期缓存
+    private long warmTopShops(Progress progress) {
+        List<Shop> shops = shopService.query().orderByDesc("comments").last("limit " + topShops).list();
+        Map<Long, Shop> shopMap = shops.stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+        cacheClient.setManyWithLogicalExpire(CACHE_SHOP_KEY, shopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        progress.count.set(shopMap.size());
+        return progress.count.get();
+    }
+
+    //秒杀库存：只处理还没结束的秒杀券，redis中已有库存时不覆盖（SETNX），已经分段的库存跳过
+    private long warmSeckillStock(Progress progress) {
+        List<SeckillVoucher> vouchers = seckillVoucherService.query().gt("end_time", LocalDateTime.now()).list();
+        if (vouchers.isEmpty()) {
+            return 0;
+        }
+        //1、一次pipeline查询哪些秒杀券的库存已经分段
+        List<Object> segments = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (SeckillVoucher voucher : vouchers) {
+                stringConnection.get(SECKILL_STOCK_SEGMENTS_KEY + voucher.getVoucherId());
+            }
+            return null;
+        });
+        //2、一次pipeline写入没有分段的库存
+        List<SeckillVoucher> plainVouchers = new ArrayList<>(vouchers.size());
+        for (int i = 0; i < vouchers.size(); i++) {
+            if (segments.get(i) == null) {
+                plainVouchers.add(vouchers.get(i));
+            }
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (SeckillVoucher voucher : plainVouchers) {
+                stringConnection.setNX(SeckillKeys.stockKey(voucher.getVoucherId(), partitions), voucher.getStock().toString());
+            }
+            return null;
+        });
+        progress.count.set(results.stream().filter(Boolean.TRUE::equals).count());
+        return progress.count.get();
+    }
+
+    //商铺地理位置：全量重建GEO集合，流式读取数据库后分批写入临时key，完成后替换；超时被取消时不修改正式数据
+    private long warmShopGeo(Progress progress) {
+        return shopGeoStore.rebuild(progress.count::addAndGet);
+    }
+
+    /**
+     * 预热任务进度
+     */
+    private static class Progress {
+        private volatile String state = "waiting";
+        private final long startMillis = System.currentTimeMillis();
+        private volatile long elapsedMillis;
+        private final AtomicLong count = new AtomicLong();
+
+        void finish(String state) {
+            this.state = state;
+            this.elapsedMillis = System.currentTimeMillis() - startMillis;
+        }
+    }
+}
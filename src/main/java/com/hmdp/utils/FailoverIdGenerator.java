@@ -0,0 +1,176 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+
+/**
+ * 默认的id生成器：优先使用redis生成，redis不可用时自动切换到本地雪花算法，
+ * 切换后每隔一段时间再尝试redis，恢复后切回；只有配置了允许降级的业务前缀才会切换，默认不降级。
+ * 本地生成需要机器id：配置了固定的机器id时直接使用；否则用 SET NX PX 从redis租用一个机器id并定时续期，保证节点之间不重复，
+ * 启动时redis不可用不影响启动，租到机器id之前不能降级，后台继续尝试租用
+ */
+@Slf4j
+@Primary
+@Component
+public class FailoverIdGenerator implements IdGenerator {
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("worker-lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+    }
+    //释放租约，和释放锁一样只删除自己的
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+    static {
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final RedisIdWorker redisIdWorker;
+    private final StringRedisTemplate stringRedisTemplate;
+    //允许降级到本地生成的业务前缀
+    private final Set<String> fallbackPrefixes;
+    //redis失败后多久再尝试redis
+    private final long retryIntervalMs;
+    //机器id租约的有效时间
+    private final long leaseMs;
+    //租约中记录的节点标识
+    private final String owner = NetUtil.getLocalHostName() + ":" + RuntimeUtil.getPid() + ":" + UUID.randomUUID().toString(true);
+    private volatile LocalIdGenerator localIdGenerator;
+    //租用的机器id，显式配置时为-1
+    private volatile long leasedWorkerId = -1;
+    private ScheduledExecutorService leaseExecutor;
+    //在这个时间之前redis视为不可用
+    private volatile long redisRetryTime;
+
+    public FailoverIdGenerator(RedisIdWorker redisIdWorker,
+                               StringRedisTemplate stringRedisTemplate,
+                               @Value("${hmdp.id.worker-id:-1}") long workerId,
+                               @Value("${hmdp.id.worker-lease-ms:60000}") long leaseMs,
+                               @Value("${hmdp.id.fallback-prefixes:}") List<String> fallbackPrefixes,
+                               @Value("${hmdp.id.retry-interval-ms:5000}") long retryIntervalMs) {
+        this.redisIdWorker = redisIdWorker;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.fallbackPrefixes = new HashSet<>(fallbackPrefixes);
+        this.retryIntervalMs = retryIntervalMs;
+        this.leaseMs = leaseMs;
+        if (workerId >= 0) {
+            this.localIdGenerator = new LocalIdGenerator(workerId);
+        } else if (!this.fallbackPrefixes.isEmpty()) {
+            //没有配置机器id时从redis租用，不使用可能重复的机器id；租用失败时先不降级，由后台任务继续租用
+            try {
+                workerId = lease();
+                this.localIdGenerator = new LocalIdGenerator(workerId);
+            } catch (RuntimeException e) {
+                log.error("租用机器id失败，租到之前redis不可用时不降级", e);
+            }
+            leaseExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "id-worker-lease");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(1, leaseMs / 3);
+            leaseExecutor.scheduleWithFixedDelay(this::renew, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        log.info("id生成器机器id={}，允许降级的业务前缀={}", workerId, this.fallbackPrefixes);
+    }
+
+    @Override
+    public long nextId(String prefix) {
+        if (!fallbackPrefixes.contains(prefix)) {
+            return redisIdWorker.nextId(prefix);
+        }
+        //1、redis处于不可用状态，直接使用本地生成；还没有租到机器id时只能使用redis
+        LocalIdGenerator local = localIdGenerator;
+        if (local == null) {
+            return redisIdWorker.nextId(prefix);
+        }
+        if (System.currentTimeMillis() < redisRetryTime) {
+            return local.nextId(prefix);
+        }
+        //2、尝试redis，失败时切换到本地生成
+        try {
+            long id = redisIdWorker.nextId(prefix);
+            if (redisRetryTime != 0) {
+                redisRetryTime = 0;
+                log.info("redis已恢复，id生成切回redis");
+            }
+            return id;
+        } catch (RuntimeException e) {
+            redisRetryTime = System.currentTimeMillis() + retryIntervalMs;
+            log.error("redis生成id失败，{}ms内使用本地id生成器，prefix={}", retryIntervalMs, prefix, e);
+            return local.nextId(prefix);
+        }
+    }
+
+    //从随机位置开始依次尝试，租用第一个没有被其他节点使用的机器id
+    private long lease() {
+        int total = (int) LocalIdGenerator.MAX_WORKER_ID + 1;
+        int start = ThreadLocalRandom.current().nextInt(total);
+        for (int i = 0; i < total; i++) {
+            long workerId = (start + i) % total;
+            if (tryLease(workerId)) {
+                leasedWorkerId = workerId;
+                return workerId;
+            }
+        }
+        throw new IllegalStateException("没有可用的机器id，请配置 hmdp.id.worker-id");
+    }
+
+    private boolean tryLease(long workerId) {
+        Long result = stringRedisTemplate.execute(LEASE_SCRIPT,
+                Collections.singletonList(ID_WORKER_KEY + workerId), owner, String.valueOf(leaseMs));
+        return result != null && result == 1;
+    }
+
+    //续期租约；启动时没有租到、或者redis长时间不可用导致租约过期并被其他节点租走时，重新租用一个机器id
+    private void renew() {
+        try {
+            if (leasedWorkerId >= 0 && tryLease(leasedWorkerId)) {
+                return;
+            }
+            long old = leasedWorkerId;
+            long workerId = lease();
+            localIdGenerator = new LocalIdGenerator(workerId);
+            log.warn("机器id {} 已失效，切换为 {}", old, workerId);
+        } catch (RuntimeException e) {
+            log.error("机器id租约续期失败，workerId={}", leasedWorkerId, e);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (leaseExecutor == null) {
+            return;
+        }
+        leaseExecutor.shutdownNow();
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + leasedWorkerId), owner);
+        } catch (RuntimeException e) {
+            log.warn("释放机器id租约失败，workerId={}", leasedWorkerId, e);
+        }
+    }
+}
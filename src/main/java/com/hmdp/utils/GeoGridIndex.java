@@ -0,0 +1,384 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+
+/**
+ * 网格空间索引
+ * 按经纬度把平面切成固定大小的格子，每个格子用基本类型数组保存其中的点；
+ * 查询时从查询点所在的格子开始一圈一圈向外扫描，已经找到足够多的点并且外圈不可能更近时停止；
+ * 每个点先用平面近似距离过滤，只有可能进入结果的点才计算球面距离，距离算法和redis GEO一致。
+ * 每个点可以带一个64位的附加属性，由调用方编码，查询时按属性过滤和排序，不需要回表。
+ * 格子中的数组创建后不再修改，写入时复制一个新格子替换旧格子，读取不加锁
+ */
+public class GeoGridIndex {
+
+    //和redis GEO计算距离使用的地球半径一致，保证两种查询的距离相同
+    private static final double EARTH_RADIUS = 6372797.560856;
+    //平面近似距离的误差余量，几十公里内近似距离和球面距离的差别远小于1%
+    private static final double APPROX_MARGIN = 0.01;
+    //按属性排序时排序值 = 属性排序值 * RANK_SCALE + 距离，大于地球上任意两点的距离，属性相同的点再按距离排序
+    private static final double RANK_SCALE = 1e8;
+    //属性排序值的绝对值上限，保证排序值中的距离部分仍有厘米级精度
+    public static final int MAX_RANK = 1 << 24;
+    private static final Cell EMPTY_CELL = new Cell(new long[0], new double[0], new double[0], new long[0]);
+
+    //格子的边长（度）
+    private final double cellDegrees;
+    private final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+    //每个点所在的格子，只在写入时使用
+    private final Map<Long, Long> cellOfId = new HashMap<>();
+
+    public GeoGridIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    public void put(long id, double x, double y) {
+        put(id, x, y, 0);
+    }
+
+    /**
+     * 新增一个点，或者修改已有点的位置和属性
+     */
+    public synchronized void put(long id, double x, double y, long attrs) {
+        long cellKey = cellKey(x, y);
+        Long oldCellKey = cellOfId.put(id, cellKey);
+        if (oldCellKey != null) {
+            cells.computeIfPresent(oldCellKey, (key, cell) -> cell.without(id));
+        }
+        cells.put(cellKey, cells.getOrDefault(cellKey, EMPTY_CELL).with(id, x, y, attrs));
+    }
+
+    public synchronized void remove(long id) {
+        Long cellKey = cellOfId.remove(id);
+        if (cellKey != null) {
+            cells.computeIfPresent(cellKey, (key, cell) -> cell.without(id));
+        }
+    }
+
+    public void load(long[] ids, double[] xs, double[] ys, int size) {
+        load(ids, xs, ys, null, size);
+    }
+
+    /**
+     * 批量加载，替换索引中所有的点
+     * @param attrs 每个点的附加属性，为空时都是0
+     */
+    public synchronized void load(long[] ids, double[] xs, double[] ys, long[] attrs, int size) {
+        //1、先按格子分组，每个格子只创建一次数组
+        Map<Long, int[]> counts = new HashMap<>();
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = cellKey(xs[i], ys[i]);
+            counts.computeIfAbsent(keys[i], key -> new int[1])[0]++;
+        }
+        Map<Long, Cell> loaded = new HashMap<>(counts.size() * 2);
+        counts.forEach((key, count) -> loaded.put(key, new Cell(new long[count[0]], new double[count[0]], new double[count[0]], new long[count[0]])));
+        Map<Long, int[]> positions = new HashMap<>(counts.size() * 2);
+        for (int i = 0; i < size; i++) {
+            Cell cell = loaded.get(keys[i]);
+            int position = positions.computeIfAbsent(keys[i], key -> new int[1])[0]++;
+            cell.ids[position] = ids[i];
+            cell.xs[position] = xs[i];
+            cell.ys[position] = ys[i];
+            cell.attrs[position] = attrs == null ? 0 : attrs[i];
+        }
+        //2、整体替换
+        cellOfId.clear();
+        for (int i = 0; i < size; i++) {
+            cellOfId.put(ids[i], keys[i]);
+        }
+        cells.clear();
+        cells.putAll(loaded);
+    }
+
+    public synchronized int size() {
+        return cellOfId.size();
+    }
+
+    /**
+     * 查询半径内距离最近的点，按 (距离, id) 从小到大排序
+     * @param x 经度
+     * @param y 纬度
+     * @param radius 半径，单位米
+     * @param afterDistance 只返回排在 (afterDistance, afterId) 之后的点，用于滚动分页，第一页传-1
+     * @param afterId 同上
+     * @param limit 最多返回的数量
+     */
+    public Hits search(double x, double y, double radius, double afterDistance, long afterId, int limit) {
+        return search(x, y, radius, null, null, afterDistance, afterId, limit);
+    }
+
+    /**
+     * 查询半径内满足条件的点，按 (排序值, id) 从小到大排序
+     * 不按属性排序时排序值就是距离，从近到远扫描格子，找够之后提前结束；
+     * 按属性排序时排序值是 属性排序值 * RANK_SCALE + 距离，需要扫描半径内所有的格子
+     * @param filter 按附加属性过滤，为空时不过滤
+     * @param rank 附加属性的排序值，越小越靠前，绝对值不超过 MAX_RANK；为空时按距离排序
+     * @param afterKey 只返回排在 (afterKey, afterId) 之后的点，用于滚动分页，第一页传 Double.NEGATIVE_INFINITY
+     * @param afterId 同上
+     * @param limit 最多返回的数量
+     */
+    public Hits search(double x, double y, double radius, LongPredicate filter, LongToIntFunction rank,
+                       double afterKey, long afterId, int limit) {
+        Hits hits = new Hits(limit);
+        if (limit <= 0) {
+            return hits;
+        }
+        //1、圆形范围的外接矩形
+        double deltaY = Math.toDegrees(radius / EARTH_RADIUS);
+        double deltaX = deltaY / Math.max(Math.cos(Math.toRadians(y)), 1e-6);
+        double minX = x - deltaX, maxX = x + deltaX, minY = y - deltaY, maxY = y + deltaY;
+        long minCellX = (long) Math.floor(minX / cellDegrees), maxCellX = (long) Math.floor(maxX / cellDegrees);
+        long minCellY = (long) Math.floor(minY / cellDegrees), maxCellY = (long) Math.floor(maxY / cellDegrees);
+        //2、矩形覆盖的格子比已有的格子还多时，直接遍历所有格子
+        Scan scan = new Scan(x, y, radius, filter, rank, afterKey, afterId, hits);
+        if ((maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > cells.size()) {
+            for (Cell cell : cells.values()) {
+                scan.scan(cell);
+            }
+            return hits;
+        }
+        //3、从中心格子一圈一圈向外扫描，第r圈中的点距离查询点至少 (r-1) 个格子宽度，按距离排序时可以提前结束
+        long centerX = (long) Math.floor(x / cellDegrees), centerY = (long) Math.floor(y / cellDegrees);
+        long maxRing = Math.max(Math.max(centerX - minCellX, maxCellX - centerX), Math.max(centerY - minCellY, maxCellY - centerY));
+        double cellMeters = cellDegrees * Math.min(scan.metersPerDegreeX, scan.metersPerDegreeY) * (1 - APPROX_MARGIN);
+        for (long ring = 0; ring <= maxRing; ring++) {
+            if (rank == null && hits.isFull() && (ring - 1) * cellMeters > hits.worstKey()) {
+                break;
+            }
+            for (long cellX = centerX - ring; cellX <= centerX + ring; cellX++) {
+                //第一列和最后一列扫描整列，中间的列只扫描上下两个格子
+                long step = cellX == centerX - ring || cellX == centerX + ring ? 1 : Math.max(2 * ring, 1);
+                for (long cellY = centerY - ring; cellY <= centerY + ring; cellY += step) {
+                    if (cellX < minCellX || cellX > maxCellX || cellY < minCellY || cellY > maxCellY) {
+                        continue;
+                    }
+                    Cell cell = cells.get(cellKey(cellX, cellY));
+                    if (cell != null) {
+                        scan.scan(cell);
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 两个坐标之间的距离（米），和redis的geohashGetDistance相同
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private long cellKey(double x, double y) {
+        return cellKey((long) Math.floor(x / cellDegrees), (long) Math.floor(y / cellDegrees));
+    }
+
+    private static long cellKey(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 一次查询的参数，按查询点的纬度换算每度经纬度对应的米数，用于计算平面近似距离
+     */
+    private static class Scan {
+        private final double x;
+        private final double y;
+        private final double radius;
+        private final LongPredicate filter;
+        private final LongToIntFunction rank;
+        private final double afterKey;
+        private final long afterId;
+        private final Hits hits;
+        private final double metersPerDegreeX;
+        private final double metersPerDegreeY;
+        //半径和游标距离加上误差余量后的平方，近似距离的平方超出这个范围的点一定不在结果中
+        private final double maxApprox2;
+        private final double minApprox2;
+
+        Scan(double x, double y, double radius, LongPredicate filter, LongToIntFunction rank,
+             double afterKey, long afterId, Hits hits) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.filter = filter;
+            this.rank = rank;
+            this.afterKey = afterKey;
+            this.afterId = afterId;
+            this.hits = hits;
+            this.metersPerDegreeY = Math.toRadians(1) * EARTH_RADIUS;
+            this.metersPerDegreeX = metersPerDegreeY * Math.cos(Math.toRadians(y));
+            double max = radius * (1 + APPROX_MARGIN);
+            //按属性排序时游标不能换算成距离下限
+            double min = rank == null ? Math.max(afterKey, 0) * (1 - APPROX_MARGIN) : 0;
+            this.maxApprox2 = max * max;
+            this.minApprox2 = min * min;
+        }
+
+        void scan(Cell cell) {
+            long[] ids = cell.ids;
+            double[] xs = cell.xs;
+            double[] ys = cell.ys;
+            long[] attrs = cell.attrs;
+            for (int i = 0; i < ids.length; i++) {
+                //1、平面近似距离过滤：超出半径、在游标之前、比已有结果中最远的还远
+                double dx = (xs[i] - x) * metersPerDegreeX;
+                double dy = (ys[i] - y) * metersPerDegreeY;
+                double approx2 = dx * dx + dy * dy;
+                if (approx2 > maxApprox2 || approx2 < minApprox2) {
+                    continue;
+                }
+                if (rank == null && hits.isFull()) {
+                    double worst = hits.worstKey() * (1 + APPROX_MARGIN);
+                    if (approx2 > worst * worst) {
+                        continue;
+                    }
+                }
+                //2、属性过滤；按属性排序时，排序值的下限已经排在最后一个结果之后、或者上限还在游标之前的点跳过
+                if (filter != null && !filter.test(attrs[i])) {
+                    continue;
+                }
+                double base = 0;
+                if (rank != null) {
+                    base = rank.applyAsInt(attrs[i]) * RANK_SCALE;
+                    if ((hits.isFull() && base > hits.worstKey()) || base + radius < afterKey) {
+                        continue;
+                    }
+                }
+                //3、计算球面距离
+                double distance = distance(x, y, xs[i], ys[i]);
+                double key = base + distance;
+                if (distance > radius || key < afterKey || (key == afterKey && ids[i] <= afterId)) {
+                    continue;
+                }
+                hits.offer(ids[i], key, distance);
+            }
+        }
+    }
+
+    /**
+     * 一个格子中的点，数组不再修改
+     */
+    private static class Cell {
+        private final long[] ids;
+        private final double[] xs;
+        private final double[] ys;
+        private final long[] attrs;
+
+        Cell(long[] ids, double[] xs, double[] ys, long[] attrs) {
+            this.ids = ids;
+            this.xs = xs;
+            this.ys = ys;
+            this.attrs = attrs;
+        }
+
+        Cell with(long id, double x, double y, long attr) {
+            int n = ids.length;
+            Cell cell = new Cell(Arrays.copyOf(ids, n + 1), Arrays.copyOf(xs, n + 1), Arrays.copyOf(ys, n + 1), Arrays.copyOf(attrs, n + 1));
+            cell.ids[n] = id;
+            cell.xs[n] = x;
+            cell.ys[n] = y;
+            cell.attrs[n] = attr;
+            return cell;
+        }
+
+        //删除后为空时返回null，从索引中移除这个格子
+        Cell without(long id) {
+            int index = -1;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return this;
+            }
+            if (ids.length == 1) {
+                return null;
+            }
+            int n = ids.length - 1;
+            Cell cell = new Cell(new long[n], new double[n], new double[n], new long[n]);
+            System.arraycopy(ids, 0, cell.ids, 0, index);
+            System.arraycopy(xs, 0, cell.xs, 0, index);
+            System.arraycopy(ys, 0, cell.ys, 0, index);
+            System.arraycopy(attrs, 0, cell.attrs, 0, index);
+            System.arraycopy(ids, index + 1, cell.ids, index, n - index);
+            System.arraycopy(xs, index + 1, cell.xs, index, n - index);
+            System.arraycopy(ys, index + 1, cell.ys, index, n - index);
+            System.arraycopy(attrs, index + 1, cell.attrs, index, n - index);
+            return cell;
+        }
+    }
+
+    /**
+     * 查询结果：按 (排序值, id) 排序的前limit个点，数组插入排序
+     */
+    public static class Hits {
+        private final long[] ids;
+        private final double[] keys;
+        private final double[] distances;
+        private int size;
+
+        Hits(int limit) {
+            this.ids = new long[Math.max(limit, 0)];
+            this.keys = new double[Math.max(limit, 0)];
+            this.distances = new double[Math.max(limit, 0)];
+        }
+
+        void offer(long id, double key, double distance) {
+            int limit = ids.length;
+            if (size == limit && !before(key, id, keys[size - 1], ids[size - 1])) {
+                return;
+            }
+            int i = size == limit ? size - 1 : size++;
+            while (i > 0 && before(key, id, keys[i - 1], ids[i - 1])) {
+                ids[i] = ids[i - 1];
+                keys[i] = keys[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            keys[i] = key;
+            distances[i] = distance;
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        double worstKey() {
+            return keys[size - 1];
+        }
+
+        private static boolean before(double key, long id, double otherKey, long otherId) {
+            return key < otherKey || (key == otherKey && id < otherId);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long id(int index) {
+            return ids[index];
+        }
+
+        public double distance(int index) {
+            return distances[index];
+        }
+
+        //排序值，用作滚动分页的游标
+        public double key(int index) {
+            return keys[index];
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.hmdp.config.HotKeyProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * 热点key探测
+ * 按采样比例记录缓存key的访问次数，使用分段的count-min sketch统计滑动窗口内的访问次数；
+ * 次数超过阈值的key成为热点key（最多topK个），每滑动一段重新计算，访问次数降到阈值以下时移除并通知监听者
+ */
+@Component
+@Slf4j
+public class HotKeyDetector {
+
+    //count-min sketch的行数和每行的计数器数量
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 12;
+
+    private final HotKeyProperties properties;
+    //每一段窗口一个sketch，current指向正在写入的段
+    private AtomicIntegerArray[] slices;
+    private volatile int current;
+    //当前的热点key和最近一次估算的访问次数
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+    //热点key被移除时的回调
+    private volatile Consumer<String> demoteListener = key -> { };
+    private ScheduledExecutorService scheduler;
+
+    public HotKeyDetector(HotKeyProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    private void init() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        slices = new AtomicIntegerArray[properties.getSlices()];
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = new AtomicIntegerArray(DEPTH * WIDTH);
+        }
+        long sliceMillis = Math.max(1, properties.getWindow().toMillis() / slices.length);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-key-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::slide, sliceMillis, sliceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public Duration getReplicaTtl() {
+        return properties.getReplicaTtl();
+    }
+
+    public void setDemoteListener(Consumer<String> demoteListener) {
+        this.demoteListener = demoteListener;
+    }
+
+    /**
+     * 记录一次访问，按采样比例只有一部分访问会被计数
+     */
+    public void record(String key) {
+        if (slices == null) {
+            return;
+        }
+        int sampleRate = properties.getSampleRate();
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        long[] hash = MurmurHash.hash128(key);
+        AtomicIntegerArray slice = slices[current];
+        for (int i = 0; i < DEPTH; i++) {
+            slice.addAndGet(index(hash, i), Math.max(1, sampleRate));
+        }
+        if (hotKeys.containsKey(key)) {
+            return;
+        }
+        long count = estimate(hash);
+        if (count >= properties.getThreshold()) {
+            promote(key, count);
+        }
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 按访问次数从高到低返回当前的热点key
+     */
+    public List<Map<String, Object>> topKeys() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        List<Map<String, Object>> result = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Long> entry : entries) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", entry.getKey());
+            item.put("count", entry.getValue());
+            result.add(item);
+        }
+        return result;
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    //成为热点key，数量已满时替换掉访问次数最少的key
+    private synchronized void promote(String key, long count) {
+        if (hotKeys.size() >= properties.getTopK()) {
+            Map.Entry<String, Long> coldest = hotKeys.entrySet().stream()
+                    .min(Comparator.comparingLong(Map.Entry::getValue)).orElse(null);
+            if (coldest == null || coldest.getValue() >= count) {
+                return;
+            }
+            demote(coldest.getKey());
+        }
+        hotKeys.put(key, count);
+        log.debug("发现热点key: {}, 访问次数: {}", key, count);
+    }
+
+    private void demote(String key) {
+        if (hotKeys.remove(key) != null) {
+            demoteListener.accept(key);
+        }
+    }
+
+    //窗口滑动一段：清空最老的一段作为新的写入段，再重新估算热点key的访问次数
+    private void slide() {
+        try {
+            int next = (current + 1) % slices.length;
+            AtomicIntegerArray oldest = slices[next];
+            for (int i = 0; i < oldest.length(); i++) {
+                oldest.set(i, 0);
+            }
+            current = next;
+            for (String key : new ArrayList<>(hotKeys.keySet())) {
+                long count = estimate(MurmurHash.hash128(key));
+                if (count < properties.getThreshold()) {
+                    demote(key);
+                } else {
+                    hotKeys.computeIfPresent(key, (k, old) -> count);
+                }
+            }
+        } catch (Exception e) {
+            log.error("热点key统计窗口滑动失败", e);
+        }
+    }
+
+    //窗口内的访问次数：每一段取各行的最小值，再把所有段相加
+    private long estimate(long[] hash) {
+        long total = 0;
+        for (AtomicIntegerArray slice : slices) {
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, slice.get(index(hash, i)));
+            }
+            total += min;
+        }
+        return total;
+    }
+
+    private static int index(long[] hash, int row) {
+        long combined = hash[0] + row * hash[1];
+        return row * WIDTH + (int) ((combined & Long.MAX_VALUE) % WIDTH);
+    }
+}
@@ -0,0 +1,14 @@
+package com.hmdp.utils;
+
+/**
+ * 全局id生成器，id结构：时间戳(高32位) + 序列号(低32位)
+ */
+public interface IdGenerator {
+
+    /**
+     * 生成全局唯一id
+     * @param prefix 业务前缀
+     * @return id
+     */
+    long nextId(String prefix);
+}
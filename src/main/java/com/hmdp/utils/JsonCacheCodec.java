@@ -0,0 +1,262 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.entity.RedisData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * json格式：对象用Spring的ObjectMapper序列化，和接口响应的格式一致（时间为字符串、忽略null属性），缓存中的json可以直接写入响应；
+ * 没有逻辑过期时间时直接存对象的json，有逻辑过期时间时存 {"data":对象,"expireMillis":毫秒数}。
+ * 旧版本用Hutool写入的 {"expireTime":毫秒数,"data":对象} 仍然可以解码，但时间是毫秒数，不能直接写入响应
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    private static final byte[] DATA_KEY = "data".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EXPIRE_MILLIS_KEY = "expireMillis".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EXPIRE_TIME_KEY = "expireTime".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA_PREFIX = "{\"data\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EXPIRE_MILLIS_PREFIX = ",\"expireMillis\":".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+
+    public JsonCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(Object value, long expireMillis) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(value);
+            if (expireMillis <= 0) {
+                return json;
+            }
+            byte[] expire = Long.toString(expireMillis).getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(DATA_PREFIX.length + json.length + EXPIRE_MILLIS_PREFIX.length + expire.length + 1);
+            out.write(DATA_PREFIX);
+            out.write(json);
+            out.write(EXPIRE_MILLIS_PREFIX);
+            out.write(expire);
+            out.write('}');
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存对象编码失败：" + value.getClass(), e);
+        }
+    }
+
+    @Override
+    public boolean canDecode(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == '{';
+    }
+
+    @Override
+    public long readExpireMillis(byte[] bytes) {
+        Layout layout = scan(bytes);
+        if (layout == null || layout.dataStart < 0) {
+            return 0;
+        }
+        return layout.legacy ? legacyExpireMillis(bytes) : Math.max(layout.expireMillis, 0);
+    }
+
+    @Override
+    public <R> CacheValue<R> decode(byte[] bytes, Class<R> type) {
+        Layout layout = scan(bytes);
+        try {
+            if (layout != null && layout.dataStart >= 0 && !layout.legacy) {
+                R r = objectMapper.readValue(bytes, layout.dataStart, layout.dataEnd - layout.dataStart, type);
+                return new CacheValue<>(r, layout.expireMillis);
+            }
+            if (layout == null || layout.dataStart < 0) {
+                return new CacheValue<>(objectMapper.readValue(bytes, type), 0);
+            }
+        } catch (IOException e) {
+            //旧版本Hutool写入的时间是毫秒数，ObjectMapper无法解析时按旧格式解码
+        }
+        return decodeLegacy(bytes, type);
+    }
+
+    /**
+     * 只扫描最外层的属性，不解析对象：数据是 {"data":对象,"expireMillis":毫秒数} 时返回data属性的值，
+     * 其他数据（没有逻辑过期时间的对象、旧版本的格式）返回null，由调用方解码后重新序列化
+     */
+    @Override
+    public RawJson readJson(byte[] bytes) {
+        Layout layout = scan(bytes);
+        if (layout == null || layout.dataStart < 0 || layout.legacy || layout.expireMillis < 0) {
+            return null;
+        }
+        return new RawJson(bytes, layout.dataStart, layout.dataEnd - layout.dataStart, layout.expireMillis);
+    }
+
+    //旧版本Hutool写入的数据
+    private static <R> CacheValue<R> decodeLegacy(byte[] bytes, Class<R> type) {
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        if (!isRedisData(json)) {
+            return new CacheValue<>(json.toBean(type), 0);
+        }
+        RedisData redisData = json.toBean(RedisData.class);
+        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        return new CacheValue<>(r, toMillis(redisData.getExpireTime()));
+    }
+
+    private static long legacyExpireMillis(byte[] bytes) {
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        return isRedisData(json) ? toMillis(json.toBean(RedisData.class).getExpireTime()) : 0;
+    }
+
+    /**
+     * 扫描最外层的属性，只有data和expireMillis（或旧版本的expireTime）两个属性时记录data的位置，
+     * 其他对象dataStart为-1；数据不完整时返回null
+     */
+    private static Layout scan(byte[] bytes) {
+        if (!(bytes.length > 0 && bytes[0] == '{')) {
+            return null;
+        }
+        int keys = 0;
+        int dataStart = -1;
+        int dataEnd = -1;
+        int expireStart = -1;
+        int expireEnd = -1;
+        boolean legacy = false;
+        int i = skipWhitespace(bytes, 1);
+        while (i < bytes.length && bytes[i] == '"') {
+            int keyEnd = skipString(bytes, i);
+            int colon = skipWhitespace(bytes, keyEnd);
+            if (colon >= bytes.length || bytes[colon] != ':') {
+                return null;
+            }
+            int valueStart = skipWhitespace(bytes, colon + 1);
+            int valueEnd = skipValue(bytes, valueStart);
+            if (valueEnd > bytes.length) {
+                return null;
+            }
+            keys++;
+            if (isKey(bytes, i, keyEnd, DATA_KEY)) {
+                dataStart = valueStart;
+                dataEnd = valueEnd;
+            } else if (isKey(bytes, i, keyEnd, EXPIRE_MILLIS_KEY)) {
+                expireStart = valueStart;
+                expireEnd = valueEnd;
+            } else if (isKey(bytes, i, keyEnd, EXPIRE_TIME_KEY)) {
+                expireStart = valueStart;
+                expireEnd = valueEnd;
+                legacy = true;
+            }
+            i = skipWhitespace(bytes, valueEnd);
+            if (i < bytes.length && bytes[i] == ',') {
+                i = skipWhitespace(bytes, i + 1);
+            }
+        }
+        Layout layout = new Layout();
+        if (keys != 2 || dataStart < 0 || expireStart < 0) {
+            return layout;
+        }
+        layout.dataStart = dataStart;
+        layout.dataEnd = dataEnd;
+        layout.legacy = legacy;
+        layout.expireMillis = parseLong(bytes, expireStart, expireEnd);
+        return layout;
+    }
+
+    //外层属性的位置，dataStart为-1表示不是逻辑过期的包装格式
+    private static class Layout {
+        private int dataStart = -1;
+        private int dataEnd;
+        private long expireMillis;
+        private boolean legacy;
+    }
+
+    //逻辑过期的数据包装在RedisData中
+    private static boolean isRedisData(JSONObject json) {
+        return json.size() == 2 && json.containsKey("expireTime") && json.containsKey("data");
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static int skipWhitespace(byte[] bytes, int i) {
+        while (i < bytes.length && (bytes[i] == ' ' || bytes[i] == '\n' || bytes[i] == '\r' || bytes[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    //跳过一个字符串，返回结束引号之后的下标，没有结束引号时返回数组长度+1
+    private static int skipString(byte[] bytes, int i) {
+        for (i++; i < bytes.length; i++) {
+            if (bytes[i] == '\\') {
+                i++;
+            } else if (bytes[i] == '"') {
+                return i + 1;
+            }
+        }
+        return bytes.length + 1;
+    }
+
+    //跳过一个值，返回值之后的下标，值不完整时返回数组长度+1
+    private static int skipValue(byte[] bytes, int i) {
+        if (i >= bytes.length) {
+            return bytes.length + 1;
+        }
+        if (bytes[i] == '"') {
+            return skipString(bytes, i);
+        }
+        if (bytes[i] != '{' && bytes[i] != '[') {
+            //数字、true、false、null
+            while (i < bytes.length && bytes[i] != ',' && bytes[i] != '}' && bytes[i] != ']' && bytes[i] != ' ') {
+                i++;
+            }
+            return i;
+        }
+        int depth = 0;
+        while (i < bytes.length) {
+            byte b = bytes[i];
+            if (b == '"') {
+                i = skipString(bytes, i);
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return bytes.length + 1;
+    }
+
+    //引号之间的属性名是否等于key
+    private static boolean isKey(byte[] bytes, int start, int end, byte[] key) {
+        if (end - start - 2 != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (bytes[start + 1 + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //只接受非负整数，其他格式返回-1
+    private static long parseLong(byte[] bytes, int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return value;
+    }
+}
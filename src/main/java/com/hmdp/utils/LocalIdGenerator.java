@@ -0,0 +1,63 @@
+package com.hmdp.utils;
+
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地id生成器（雪花算法），redis不可用时使用
+ * id结构和RedisIdWorker一致：时间戳(高32位) + 低32位，低32位为 1位本地标记 + 9位机器id + 22位序列号，
+ * 本地标记保证不会和redis自增的序列号重复；生成过程无锁、不创建对象
+ */
+public class LocalIdGenerator implements IdGenerator {
+
+    /**
+     * 开始时间戳，和RedisIdWorker保持一致
+     */
+    private static final long BEGIN_TIMESTAMP = 1735689600L;
+    private static final long COUNT_BITS = 32;
+    private static final long WORKER_ID_BITS = 9;
+    private static final long SEQUENCE_BITS = 22;
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final long LOCAL_FLAG = 1L << (COUNT_BITS - 1);
+    private static final TimeZone TIME_ZONE = TimeZone.getDefault();
+
+    private final long workerBits;
+    /**
+     * 当前状态：秒数 << 22 | 序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    public LocalIdGenerator(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("机器id必须在0~" + MAX_WORKER_ID + "之间：" + workerId);
+        }
+        this.workerBits = LOCAL_FLAG | workerId << SEQUENCE_BITS;
+    }
+
+    @Override
+    public long nextId(String prefix) {
+        //时间戳和RedisIdWorker一样按本地时间计算
+        long millis = System.currentTimeMillis();
+        long nowSecond = (millis + TIME_ZONE.getOffset(millis)) / 1000 - BEGIN_TIMESTAMP;
+        while (true) {
+            long current = state.get();
+            long second = current >>> SEQUENCE_BITS;
+            long sequence = current & MAX_SEQUENCE;
+            long next;
+            if (nowSecond > second) {
+                //进入新的一秒，序列号从0开始
+                next = nowSecond << SEQUENCE_BITS;
+            } else if (sequence < MAX_SEQUENCE) {
+                //同一秒内，或者时钟回拨时沿用上一次的秒数，序列号加1
+                next = current + 1;
+            } else {
+                //序列号用完，借用下一秒
+                next = (second + 1) << SEQUENCE_BITS;
+            }
+            if (state.compareAndSet(current, next)) {
+                return (next >>> SEQUENCE_BITS) << COUNT_BITS | workerBits | (next & MAX_SEQUENCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.convert.Convert;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * n-gram倒排索引
+ * 每条数据有名称和区域两个字段，统一转成半角小写并去掉空白后，把相邻两个字符（2-gram）映射到包含它的数据id列表；
+ * 另外按名称的第一个字符和前两个字符建立前缀列表，列表按 (名称长度, id) 排序，和前缀匹配的相关度顺序一致。
+ * 查询时先按顺序扫描前缀列表，前缀匹配已经够一页时提前结束；不够时对关键字的所有2-gram求交集得到候选，
+ * 再确认关键字确实出现在名称或区域中，查询开销只和最短的id列表有关，和数据总量无关。
+ * 单个字符的关键字只匹配名称前缀，不扫描包含这个字符的所有数据。
+ * 列表创建后不再修改，写入时复制一个新列表替换，读取不加锁
+ */
+public class NgramIndex {
+
+    //相关度分段：名称完全相同、名称前缀、名称中间、区域匹配，段内按出现位置和名称长度排序
+    private static final int TIER = 1_000_000;
+    private static final int MAX_POSITION = 999;
+
+    //每个2-gram对应的id列表，从小到大排序
+    private final Map<Integer, long[]> postings = new ConcurrentHashMap<>();
+    //名称第一个字符和前两个字符对应的前缀列表
+    private final Map<Integer, Prefixes> prefixes = new ConcurrentHashMap<>();
+    //每条数据规范化后的名称和区域，查询时用于确认匹配和计算相关度
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+
+    /**
+     * 新增或修改一条数据
+     */
+    public synchronized void put(long id, String name, String area) {
+        Doc doc = new Doc(normalize(name), normalize(area));
+        Doc old = docs.put(id, doc);
+        int[] oldGrams = old == null ? new int[0] : grams(old);
+        int[] newGrams = grams(doc);
+        //1、删除旧数据中有、新数据中没有的gram
+        for (int gram : oldGrams) {
+            if (Arrays.binarySearch(newGrams, gram) < 0) {
+                postings.computeIfPresent(gram, (key, ids) -> without(ids, id));
+            }
+        }
+        //2、写入新数据中的gram
+        for (int gram : newGrams) {
+            postings.merge(gram, new long[]{id}, (ids, ignored) -> with(ids, id));
+        }
+        //3、名称改变时更新前缀列表
+        if (old != null) {
+            for (int gram : prefixGrams(old.name)) {
+                prefixes.computeIfPresent(gram, (key, list) -> list.without(lengthOf(old), id));
+            }
+        }
+        for (int gram : prefixGrams(doc.name)) {
+            prefixes.merge(gram, Prefixes.of(lengthOf(doc), id), (list, ignored) -> list.with(lengthOf(doc), id));
+        }
+    }
+
+    public synchronized void remove(long id) {
+        Doc old = docs.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (int gram : grams(old)) {
+            postings.computeIfPresent(gram, (key, ids) -> without(ids, id));
+        }
+        for (int gram : prefixGrams(old.name)) {
+            prefixes.computeIfPresent(gram, (key, list) -> list.without(lengthOf(old), id));
+        }
+    }
+
+    /**
+     * 批量加载，替换索引中所有的数据
+     */
+    public synchronized void load(long[] ids, String[] names, String[] areas, int size) {
+        //1、先把每个gram的id追加到缓冲区，最后统一排序去重
+        Map<Integer, Buffer> buffers = new HashMap<>();
+        Map<Integer, Buffer> prefixBuffers = new HashMap<>();
+        Map<Long, Doc> loaded = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            Doc doc = new Doc(normalize(names[i]), normalize(areas[i]));
+            loaded.put(ids[i], doc);
+            for (int gram : grams(doc)) {
+                buffers.computeIfAbsent(gram, key -> new Buffer()).add(ids[i]);
+            }
+            for (int gram : prefixGrams(doc.name)) {
+                prefixBuffers.computeIfAbsent(gram, key -> new Buffer()).add(ids[i]);
+            }
+        }
+        //2、整体替换
+        postings.clear();
+        buffers.forEach((gram, buffer) -> postings.put(gram, buffer.toSortedArray()));
+        prefixes.clear();
+        prefixBuffers.forEach((gram, buffer) -> prefixes.put(gram, Prefixes.of(buffer.toSortedArray(), loaded)));
+        docs.clear();
+        docs.putAll(loaded);
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * 查询名称或区域中包含关键字的数据，按 (相关度, id) 从小到大排序，相关度越小越靠前；
+     * 关键字只有一个字符时只返回名称以它开头的数据
+     * @param keyword 关键字
+     * @param afterKey 只返回排在 (afterKey, afterId) 之后的数据，用于滚动分页，第一页传-1
+     * @param afterId 同上
+     * @param limit 最多返回的数量
+     */
+    public Hits search(String keyword, double afterKey, long afterId, int limit) {
+        Hits hits = new Hits(limit);
+        String word = normalize(keyword);
+        if (limit <= 0 || word.isEmpty()) {
+            return hits;
+        }
+        //1、游标还在前缀匹配的相关度内时，按顺序扫描前缀列表，够一页就结束
+        if (afterKey < 2 * TIER && searchPrefix(word, afterKey, afterId, hits)) {
+            return hits;
+        }
+        if (word.length() == 1) {
+            return hits;
+        }
+        //2、取出关键字所有2-gram的id列表，有一个不存在就没有结果
+        int[] grams = bigrams(word);
+        long[][] lists = new long[grams.length][];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings.get(grams[i]);
+            if (lists[i] == null) {
+                return hits;
+            }
+        }
+        //3、遍历最短的列表，在其他列表中二分查找求交集，前缀匹配的数据已经在第1步处理过
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        for (long id : lists[0]) {
+            boolean all = true;
+            for (int i = 1; i < lists.length && all; i++) {
+                all = Arrays.binarySearch(lists[i], id) >= 0;
+            }
+            if (!all) {
+                continue;
+            }
+            //4、确认关键字连续出现并计算相关度，gram都命中但不连续时跳过
+            Doc doc = docs.get(id);
+            int key = doc == null ? -1 : keyOf(doc, word);
+            if (key < 2 * TIER || key < afterKey || (key == afterKey && id <= afterId)) {
+                continue;
+            }
+            hits.offer(id, key);
+        }
+        return hits;
+    }
+
+    /**
+     * 扫描名称以关键字开头的数据，前缀列表按 (名称长度, id) 排序，和前缀匹配的 (相关度, id) 顺序一致，
+     * 从游标对应的长度开始扫描，结果够limit条时不再继续
+     * @return 是否已经找够limit条
+     */
+    private boolean searchPrefix(String word, double afterKey, long afterId, Hits hits) {
+        int gram = word.length() == 1 ? word.charAt(0) : word.charAt(0) << 16 | word.charAt(1);
+        Prefixes list = prefixes.get(gram);
+        if (list == null) {
+            return false;
+        }
+        int minLength = Math.min(word.length(), MAX_POSITION);
+        if (afterKey >= 0) {
+            minLength = Math.max(minLength, (int) afterKey % TIER);
+        }
+        for (int i = list.lowerBound(minLength); i < list.ids.length; i++) {
+            long id = list.ids[i];
+            Doc doc = docs.get(id);
+            if (doc == null || !doc.name.startsWith(word)) {
+                continue;
+            }
+            int key = keyOf(doc, word);
+            if (key < afterKey || (key == afterKey && id <= afterId)) {
+                continue;
+            }
+            hits.offer(id, key);
+            if (hits.isFull()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //相关度，不匹配时返回-1
+    private static int keyOf(Doc doc, String word) {
+        int length = Math.min(doc.name.length(), MAX_POSITION);
+        int position = doc.name.indexOf(word);
+        if (position == 0) {
+            return (doc.name.length() == word.length() ? 0 : TIER) + length;
+        }
+        if (position > 0) {
+            return 2 * TIER + Math.min(position, MAX_POSITION) * 1000 + length;
+        }
+        position = doc.area.indexOf(word);
+        if (position >= 0) {
+            return 3 * TIER + Math.min(position, MAX_POSITION) * 1000 + length;
+        }
+        return -1;
+    }
+
+    //全角转半角、转小写、去掉空白
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String value = Convert.toDBC(text).toLowerCase();
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isWhitespace(value.charAt(i))) {
+                builder.append(value.charAt(i));
+            }
+        }
+        return builder.toString();
+    }
+
+    //一条数据的所有2-gram (c1 << 16 | c2)，从小到大排序并去重
+    private static int[] grams(Doc doc) {
+        int[] grams = new int[doc.name.length() + doc.area.length()];
+        int size = addGrams(doc.name, grams, 0);
+        size = addGrams(doc.area, grams, size);
+        Arrays.sort(grams, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || grams[i] != grams[unique - 1]) {
+                grams[unique++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+
+    private static int addGrams(String text, int[] grams, int size) {
+        for (int i = 0; i + 1 < text.length(); i++) {
+            grams[size++] = text.charAt(i) << 16 | text.charAt(i + 1);
+        }
+        return size;
+    }
+
+    //名称的前缀gram：第一个字符是gram本身，前两个字符是 (c1 << 16 | c2)，两者不会冲突
+    private static int[] prefixGrams(String name) {
+        if (name.isEmpty()) {
+            return new int[0];
+        }
+        if (name.length() == 1) {
+            return new int[]{name.charAt(0)};
+        }
+        return new int[]{name.charAt(0), name.charAt(0) << 16 | name.charAt(1)};
+    }
+
+    //前缀列表中使用的名称长度，和相关度中的长度一样有上限
+    private static int lengthOf(Doc doc) {
+        return Math.min(doc.name.length(), MAX_POSITION);
+    }
+
+    private static int[] bigrams(String word) {
+        int[] grams = new int[word.length() - 1];
+        for (int i = 0; i + 1 < word.length(); i++) {
+            grams[i] = word.charAt(i) << 16 | word.charAt(i + 1);
+        }
+        return grams;
+    }
+
+    private static long[] with(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        index = -index - 1;
+        long[] copy = new long[ids.length + 1];
+        System.arraycopy(ids, 0, copy, 0, index);
+        copy[index] = id;
+        System.arraycopy(ids, index, copy, index + 1, ids.length - index);
+        return copy;
+    }
+
+    //删除后为空时返回null，从索引中移除这个gram
+    private static long[] without(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        long[] copy = new long[ids.length - 1];
+        System.arraycopy(ids, 0, copy, 0, index);
+        System.arraycopy(ids, index + 1, copy, index, ids.length - index - 1);
+        return copy;
+    }
+
+    /**
+     * 规范化后的名称和区域
+     */
+    private static class Doc {
+        private final String name;
+        private final String area;
+
+        Doc(String name, String area) {
+            this.name = name;
+            this.area = area;
+        }
+    }
+
+    /**
+     * 名称前缀相同的数据，按 (名称长度, id) 排序，数组创建后不再修改
+     */
+    private static class Prefixes {
+        private final int[] lengths;
+        private final long[] ids;
+
+        Prefixes(int[] lengths, long[] ids) {
+            this.lengths = lengths;
+            this.ids = ids;
+        }
+
+        static Prefixes of(int length, long id) {
+            return new Prefixes(new int[]{length}, new long[]{id});
+        }
+
+        //批量加载时按名称长度排序，ids已经从小到大排序，稳定排序后长度相同的仍按id排序
+        static Prefixes of(long[] ids, Map<Long, Doc> docs) {
+            Long[] boxed = new Long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                boxed[i] = ids[i];
+            }
+            Arrays.sort(boxed, (a, b) -> Integer.compare(lengthOf(docs.get(a)), lengthOf(docs.get(b))));
+            Prefixes list = new Prefixes(new int[ids.length], new long[ids.length]);
+            for (int i = 0; i < boxed.length; i++) {
+                list.lengths[i] = lengthOf(docs.get(boxed[i]));
+                list.ids[i] = boxed[i];
+            }
+            return list;
+        }
+
+        //第一个名称长度不小于length的位置
+        int lowerBound(int length) {
+            return indexOf(length, Long.MIN_VALUE);
+        }
+
+        //(length, id) 的位置，不存在时返回应该插入的位置
+        private int indexOf(int length, long id) {
+            int low = 0, high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lengths[mid] < length || (lengths[mid] == length && ids[mid] < id)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        Prefixes with(int length, long id) {
+            int index = indexOf(length, id);
+            if (index < ids.length && lengths[index] == length && ids[index] == id) {
+                return this;
+            }
+            int n = ids.length;
+            Prefixes list = new Prefixes(new int[n + 1], new long[n + 1]);
+            System.arraycopy(lengths, 0, list.lengths, 0, index);
+            System.arraycopy(ids, 0, list.ids, 0, index);
+            list.lengths[index] = length;
+            list.ids[index] = id;
+            System.arraycopy(lengths, index, list.lengths, index + 1, n - index);
+            System.arraycopy(ids, index, list.ids, index + 1, n - index);
+            return list;
+        }
+
+        //删除后为空时返回null，从索引中移除这个前缀
+        Prefixes without(int length, long id) {
+            int index = indexOf(length, id);
+            if (index == ids.length || lengths[index] != length || ids[index] != id) {
+                return this;
+            }
+            if (ids.length == 1) {
+                return null;
+            }
+            int n = ids.length - 1;
+            Prefixes list = new Prefixes(new int[n], new long[n]);
+            System.arraycopy(lengths, 0, list.lengths, 0, index);
+            System.arraycopy(ids, 0, list.ids, 0, index);
+            System.arraycopy(lengths, index + 1, list.lengths, index, n - index);
+            System.arraycopy(ids, index + 1, list.ids, index, n - index);
+            return list;
+        }
+    }
+
+    /**
+     * 加载时每个gram的id，数组不够时扩容
+     */
+    private static class Buffer {
+        private long[] ids = new long[8];
+        private int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toSortedArray() {
+            Arrays.sort(ids, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || ids[i] != ids[unique - 1]) {
+                    ids[unique++] = ids[i];
+                }
+            }
+            return Arrays.copyOf(ids, unique);
+        }
+    }
+
+    /**
+     * 查询结果：按 (相关度, id) 排序的前limit条数据，数组插入排序
+     */
+    public static class Hits {
+        private final long[] ids;
+        private final double[] keys;
+        private int size;
+
+        Hits(int limit) {
+            this.ids = new long[Math.max(limit, 0)];
+            this.keys = new double[Math.max(limit, 0)];
+        }
+
+        void offer(long id, double key) {
+            int limit = ids.length;
+            if (size == limit && !before(key, id, keys[size - 1], ids[size - 1])) {
+                return;
+            }
+            int i = size == limit ? size - 1 : size++;
+            while (i > 0 && before(key, id, keys[i - 1], ids[i - 1])) {
+                ids[i] = ids[i - 1];
+                keys[i] = keys[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            keys[i] = key;
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        private static boolean before(double key, long id, double otherKey, long otherId) {
+            return key < otherKey || (key == otherKey && id < otherId);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long id(int index) {
+            return ids[index];
+        }
+
+        //相关度，用作滚动分页的游标
+        public double key(int index) {
+            return keys[index];
+        }
+    }
+}
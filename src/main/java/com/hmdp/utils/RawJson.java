@@ -0,0 +1,27 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 缓存数据中对象的json片段：不复制字节，只记录在redis返回的数组中的位置
+ */
+@Getter
+@AllArgsConstructor
+public class RawJson {
+    //redis返回的完整数据
+    private final byte[] bytes;
+    //json的起始下标
+    private final int offset;
+    //json的字节数
+    private final int length;
+    //逻辑过期时间的毫秒数，0表示没有逻辑过期时间
+    private final long expireMillis;
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, offset, length);
+    }
+}
@@ -12,12 +12,34 @@ public class RedisConstants {
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop:type";
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final String SHOP_TYPE_VERSION_KEY = "shop:type:version";
+    public static final String SHOP_TYPE_CHANNEL = "shop:type:changed";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_BLOOM_CHANNEL = "cache:bloom";
+    public static final String CACHE_GENERATION_KEY = "cache:gen:";
+    public static final String CACHE_GENERATION_CHANNEL = "cache:generation";
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final String LOCK_KEY = "lock:";
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_STREAM_KEY = "stream.orders:";
+    public static final String SECKILL_STOCK_SEGMENTS_KEY = "seckill:stock:segments:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_REBUILD_KEY = "shop:geo:rebuild:";
+    public static final String SHOP_GEO_REBUILDING_KEY = "shop:geo:rebuilding";
+    public static final String SHOP_GEO_REBUILD_CHANGED_KEY = "shop:geo:rebuilding:changed";
+    public static final String SHOP_GEO_CHANNEL = "shop:geo:changed";
+    public static final String SHOP_NAME_CHANNEL = "shop:name:changed";
+    public static final String SHOP_NEARBY_KEY = "shop:nearby:";
+    public static final Long SHOP_NEARBY_TTL = 60L;
     public static final String USER_SIGN_KEY = "sign:";
 }
@@ -1,21 +1,43 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 全局id生成器:时间戳+序列号
+ * 号段模式下一次INCRBY申请一段序列号，在本地用AtomicLong分配，并在号段快用完时后台预取下一段
  */
+@Slf4j
 @Component
-public class RedisIdWorker {
+public class RedisIdWorker implements IdGenerator {
 
     private StringRedisTemplate stringRedisTemplate;
     public RedisIdWorker(StringRedisTemplate stringRedisTemplate){
+        this(stringRedisTemplate, 0);
+    }
+
+    @Autowired
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id.segment-size:0}") int segmentSize){
         this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentSize = segmentSize;
+        this.prefetchExecutor = segmentSize > 0 ? Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "id-segment-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
     }
 
     /*
@@ -26,19 +48,171 @@ public class RedisIdWorker {
      * 序列号位数
      */
     private static final long COUNT_BITS = 32;
+    /**
+     * 每天一个自增key，key中的日期格式
+     */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    /**
+     * 号段大小，小于等于0时每次生成id都执行一次INCR
+     */
+    private final int segmentSize;
+    /**
+     * 号段预取线程
+     */
+    private final ExecutorService prefetchExecutor;
+    /**
+     * 每个业务前缀的号段
+     */
+    private final Map<String, SegmentBuffer> segmentBuffers = new ConcurrentHashMap<>();
+    /**
+     * 缓存当天的日期字符串，避免每次都格式化
+     */
+    private volatile Day day = new Day(-1, null);
+
+    @Override
     public long nextId(String prefix){
         //1、生成时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
+        long nowSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
         //2、生成序列号
         //2、1获取当天日期，精确到天
-        String data = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        //2、2.自增长
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + prefix + ":" + data);
+        String data = today(nowSecond);
+        //2、2.自增长，号段模式下从本地号段中分配
+        long count = segmentSize > 0
+                ? nextCount(prefix, data)
+                : stringRedisTemplate.opsForValue().increment("icr:" + prefix + ":" + data);
         return timestamp<<COUNT_BITS | count;
     }
 
+    @PreDestroy
+    public void destroy() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 当天的日期字符串，日期不变时直接返回缓存
+     * @param nowSecond 当前时间的秒数
+     * @return yyyy:MM:dd
+     */
+    private String today(long nowSecond) {
+        long epochDay = Math.floorDiv(nowSecond, 86400L);
+        Day current = day;
+        if (current.epochDay != epochDay) {
+            current = new Day(epochDay, LocalDate.ofEpochDay(epochDay).format(DATE_FORMATTER));
+            day = current;
+        }
+        return current.text;
+    }
+
+    /**
+     * 从本地号段中分配序列号，号段用完或者跨天时切换到下一个号段
+     * @param prefix 业务前缀
+     * @param date 当天日期
+     * @return 序列号
+     */
+    private long nextCount(String prefix, String date) {
+        SegmentBuffer buffer = segmentBuffers.computeIfAbsent(prefix, k -> new SegmentBuffer());
+        while (true) {
+            IdSegment segment = buffer.current;
+            if (segment != null && segment.date.equals(date)) {
+                long count = segment.cursor.getAndIncrement();
+                if (count < segment.end) {
+                    //号段用到预取位置时，后台申请下一个号段
+                    if (count == segment.prefetchAt) {
+                        prefetch(buffer, prefix, date);
+                    }
+                    return count;
+                }
+            }
+            synchronized (buffer) {
+                //其他线程已经切换了号段，重新分配
+                if (buffer.current != segment) {
+                    continue;
+                }
+                buffer.current = takeNext(buffer, prefix, date);
+            }
+        }
+    }
+
+    /**
+     * 取出预取好的号段，没有预取或者预取的号段不是当天的，则同步申请
+     */
+    private IdSegment takeNext(SegmentBuffer buffer, String prefix, String date) {
+        Future<IdSegment> next = buffer.next;
+        buffer.next = null;
+        if (next != null) {
+            try {
+                IdSegment segment = next.get();
+                if (segment.date.equals(date)) {
+                    return segment;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warn("预取号段失败，同步申请号段，prefix={}", prefix, e.getCause());
+            }
+        }
+        return allocate(prefix, date);
+    }
+
+    private void prefetch(SegmentBuffer buffer, String prefix, String date) {
+        synchronized (buffer) {
+            if (buffer.next == null) {
+                buffer.next = prefetchExecutor.submit(() -> allocate(prefix, date));
+            }
+        }
+    }
+
+    /**
+     * 一次INCRBY申请一个号段 [max - segmentSize + 1, max]
+     */
+    private IdSegment allocate(String prefix, String date) {
+        Long max = stringRedisTemplate.opsForValue().increment("icr:" + prefix + ":" + date, segmentSize);
+        if (max == null) {
+            throw new IllegalStateException("申请号段失败：" + prefix);
+        }
+        return new IdSegment(date, max - segmentSize + 1, max + 1, Math.max(1, segmentSize / 5));
+    }
+
+    /**
+     * 号段：[cursor, end) 范围内的序列号由本节点分配
+     */
+    private static class IdSegment {
+        private final String date;
+        private final AtomicLong cursor;
+        private final long end;
+        //剩余数量降到这个位置时预取下一个号段
+        private final long prefetchAt;
+
+        IdSegment(String date, long start, long end, long prefetchRemaining) {
+            this.date = date;
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = end - prefetchRemaining;
+        }
+    }
+
+    /**
+     * 每个业务前缀的当前号段和预取中的下一个号段
+     */
+    private static class SegmentBuffer {
+        private volatile IdSegment current;
+        private volatile Future<IdSegment> next;
+    }
+
+    private static class Day {
+        private final long epochDay;
+        private final String text;
+
+        Day(long epochDay, String text) {
+            this.epochDay = epochDay;
+            this.text = text;
+        }
+    }
+
    /* public static void main(String[] args) {
         // 获取时间戳 年月日 时分秒
         LocalDateTime localDateTime = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
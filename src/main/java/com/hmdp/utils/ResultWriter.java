@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 把已经序列化好的json包装成Result直接写入响应，格式和Jackson输出的Result一致（忽略null属性）
+ * Result的头尾是固定的字节，数据部分原样写入，不需要创建对象再序列化
+ */
+public class ResultWriter {
+
+    private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+    private static final byte[] OK_PREFIX = "{\"success\":true,\"data\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OK_EMPTY = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
+
+    public static void ok(HttpServletResponse response, RawJson json) throws IOException {
+        write(response, json.getBytes(), json.getOffset(), json.getLength());
+    }
+
+    public static void ok(HttpServletResponse response, byte[] json) throws IOException {
+        if (json == null) {
+            response.setContentType(CONTENT_TYPE);
+            response.setContentLength(OK_EMPTY.length);
+            response.getOutputStream().write(OK_EMPTY);
+            return;
+        }
+        write(response, json, 0, json.length);
+    }
+
+    public static void fail(HttpServletResponse response, String errorMsg) throws IOException {
+        byte[] body = JSONUtil.toJsonStr(Result.fail(errorMsg)).getBytes(StandardCharsets.UTF_8);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * 把json包装为成功的Result写入输出流
+     */
+    public static void writeOk(OutputStream out, byte[] json, int offset, int length) throws IOException {
+        out.write(OK_PREFIX);
+        out.write(json, offset, length);
+        out.write(SUFFIX);
+    }
+
+    private static void write(HttpServletResponse response, byte[] json, int offset, int length) throws IOException {
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(OK_PREFIX.length + length + SUFFIX.length);
+        writeOk(response.getOutputStream(), json, offset, length);
+    }
+}
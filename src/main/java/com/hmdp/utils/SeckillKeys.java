@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STREAM_KEY;
+
+/**
+ * 秒杀相关的redis key
+ * 订单队列按优惠券id分区，每个分区的队列和分到这个分区的优惠券的库存、下单用户集合使用相同的hash tag {分区编号}，
+ * redis集群中位于同一个slot，秒杀脚本可以在一次EVAL中操作；不同分区可以分布在不同的分片上。
+ * 分段库存的每个分段有自己的库存和下单用户集合，第i个分段从优惠券所在分区开始依次放到后面的分区，
+ * 使用那个分区的hash tag，订单也进入那个分区的队列；分段数量不超过分区数量时每个分段位于不同的slot。
+ * 分区数量决定了key，只能在没有进行中的秒杀时修改
+ */
+public class SeckillKeys {
+
+    /**
+     * 优惠券所在的分区
+     * @param voucherId 优惠券id
+     * @param partitions 分区数量
+     */
+    public static int partition(long voucherId, int partitions) {
+        return partitions <= 1 ? 0 : (int) Math.floorMod(voucherId, (long) partitions);
+    }
+
+    //订单队列 stream.orders:{分区}
+    public static String streamKey(int partition) {
+        return SECKILL_STREAM_KEY + tag(partition);
+    }
+
+    //库存 seckill:stock:{分区}:优惠券id
+    public static String stockKey(long voucherId, int partitions) {
+        return SECKILL_STOCK_KEY + tag(partition(voucherId, partitions)) + ":" + voucherId;
+    }
+
+    //已下单的用户 seckill:order:{分区}:优惠券id
+    public static String orderKey(long voucherId, int partitions) {
+        return SECKILL_ORDER_KEY + tag(partition(voucherId, partitions)) + ":" + voucherId;
+    }
+
+    /**
+     * 库存分段所在的分区
+     * @param voucherId 优惠券id
+     * @param segment 分段编号
+     * @param partitions 分区数量
+     */
+    public static int segmentPartition(long voucherId, int segment, int partitions) {
+        return partitions <= 1 ? 0 : (partition(voucherId, partitions) + segment) % partitions;
+    }
+
+    //分段库存 seckill:stock:{分段所在分区}:优惠券id:分段编号
+    public static String segmentStockKey(long voucherId, int segment, int partitions) {
+        return SECKILL_STOCK_KEY + tag(segmentPartition(voucherId, segment, partitions)) + ":" + voucherId + ":" + segment;
+    }
+
+    //分段的已下单用户 seckill:order:{分段所在分区}:优惠券id:分段编号
+    public static String segmentOrderKey(long voucherId, int segment, int partitions) {
+        return SECKILL_ORDER_KEY + tag(segmentPartition(voucherId, segment, partitions)) + ":" + voucherId + ":" + segment;
+    }
+
+    private static String tag(int partition) {
+        return "{" + partition + "}";
+    }
+}
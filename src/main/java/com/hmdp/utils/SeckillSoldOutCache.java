@@ -0,0 +1,106 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀券售罄标记的本地缓存
+ * 优惠券售罄后在JVM内记录，之后的秒杀请求直接拒绝，不再生成订单id也不再访问redis；
+ * 标记通过redis发布订阅同步到所有节点，补充库存时清除；
+ * 标记只保留很短的时间，清除消息丢失或者先于售罄消息到达时，过期后重新以redis中的库存为准
+ */
+@Component
+@Slf4j
+public class SeckillSoldOutCache implements MessageListener {
+
+    //清除售罄标记的消息前缀，消息内容为 -voucherId
+    private static final String CLEAR_PREFIX = "-";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    //已售罄的优惠券id -> 标记过期时间
+    private final Map<Long, Long> soldOutVouchers = new ConcurrentHashMap<>();
+    //售罄标记的有效时间
+    @Value("${hmdp.seckill.sold-out-ttl-ms:5000}")
+    private long soldOutTtlMs;
+
+    public SeckillSoldOutCache(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 判断优惠券是否已经售罄
+     * @param voucherId 优惠券id
+     * @return true表示已售罄
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOutVouchers.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt > System.currentTimeMillis()) {
+            return true;
+        }
+        //标记已过期，删除后让请求重新访问redis
+        soldOutVouchers.remove(voucherId, expireAt);
+        return false;
+    }
+
+    /**
+     * 标记优惠券售罄，并通知其他节点
+     * @param voucherId 优惠券id
+     */
+    public void markSoldOut(Long voucherId) {
+        //只有标记不存在或已过期时才广播，避免售罄后每个请求都发布消息
+        if (!isSoldOut(voucherId)) {
+            mark(voucherId);
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 补充库存后清除售罄标记，并通知其他节点
+     * @param voucherId 优惠券id
+     */
+    public void clear(Long voucherId) {
+        soldOutVouchers.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, CLEAR_PREFIX + voucherId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if (body.startsWith(CLEAR_PREFIX)) {
+                soldOutVouchers.remove(Long.valueOf(body.substring(CLEAR_PREFIX.length())));
+            } else {
+                mark(Long.valueOf(body));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无效的售罄消息：{}", body);
+        }
+    }
+
+    private void mark(Long voucherId) {
+        soldOutVouchers.put(voucherId, System.currentTimeMillis() + soldOutTtlMs);
+    }
+}
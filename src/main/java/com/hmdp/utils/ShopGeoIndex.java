@@ -0,0 +1,323 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.NearbyQuery;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_CHANNEL;
+
+/**
+ * JVM内的商铺位置索引
+ * 每个商铺类型一个网格索引，启动时从数据库流式加载；商铺新增或修改后广播商铺id，
+ * 每个节点重新读取这个商铺的位置更新索引，并定时整体重新加载，补上订阅断开期间丢失的消息。开启后附近商铺查询不再访问redis GEO。
+ * 每个商铺的均价、评分、销量和营业时间编码成一个long保存在索引中，附近商铺的筛选和排序在索引内完成：
+ * 位 0-10 打烊时间、11-21 开门时间（一天中的分钟数，无法解析时为 NO_HOURS），
+ * 22-27 评分、28-43 均价、44-63 销量，超出位数的值按最大值保存
+ */
+@Component
+@Slf4j
+public class ShopGeoIndex {
+
+    private static final int CLOSE_SHIFT = 0, OPEN_SHIFT = 11, SCORE_SHIFT = 22, PRICE_SHIFT = 28, SOLD_SHIFT = 44;
+    private static final long MINUTE_MASK = (1L << 11) - 1, SCORE_MASK = (1L << 6) - 1,
+            PRICE_MASK = (1L << 16) - 1, SOLD_MASK = (1L << 20) - 1;
+    //没有营业时间或者无法解析
+    private static final int NO_HOURS = (int) MINUTE_MASK;
+    //营业时间，例如 10:00-22:00，多段营业时间只取第一段
+    private static final Pattern OPEN_HOURS = Pattern.compile("(\\d{1,2}):(\\d{2})\\s*[-~－至]\\s*(\\d{1,2}):(\\d{2})");
+
+    //是否开启，关闭时附近商铺查询使用redis GEO
+    @Value("${hmdp.shop.geo-index.enabled:false}")
+    private boolean enabled;
+    //网格边长（度），0.01度约1.1公里
+    @Value("${hmdp.shop.geo-index.cell-degrees:0.01}")
+    private double cellDegrees;
+    //整体重新加载的间隔，0表示不重新加载
+    @Value("${hmdp.shop.geo-index.reload-interval-ms:3600000}")
+    private long reloadIntervalMs;
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    //每个商铺类型的索引，重新加载时整体替换
+    private volatile Map<Long, GeoGridIndex> indexes = new ConcurrentHashMap<>();
+    //每个商铺当前所在的类型，类型变化时从旧类型的索引中删除
+    private volatile Map<Long, Long> typeOfShop = new ConcurrentHashMap<>();
+    //同一个商铺的更新按顺序执行，按商铺id分段加锁
+    private final Object[] shopLocks = IntStream.range(0, 64).mapToObj(i -> new Object()).toArray();
+    //加载期间收到变化消息的商铺，加载完成后重新读取；不在加载时为null
+    private Set<Long> changedDuringLoad;
+    private ScheduledExecutorService reloadExecutor;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        //1、先订阅商铺变化消息，加载期间的变化在加载完成后补上
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            try {
+                refresh(Long.valueOf(body));
+            } catch (NumberFormatException e) {
+                log.warn("无效的商铺位置消息：{}", body);
+            }
+        }, new ChannelTopic(SHOP_GEO_CHANNEL));
+        //2、加载所有商铺的位置
+        reload();
+        //3、定时重新加载
+        if (reloadIntervalMs <= 0) {
+            return;
+        }
+        reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shop-geo-index-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloadExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                log.error("重新加载商铺位置索引失败", e);
+            }
+        }, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查询某个类型半径内最近的商铺
+     * @see GeoGridIndex#search
+     */
+    public GeoGridIndex.Hits search(Long typeId, double x, double y, double radius, double afterDistance, long afterId, int limit) {
+        GeoGridIndex index = indexes.get(typeId);
+        return index == null ? new GeoGridIndex.Hits(0) : index.search(x, y, radius, afterDistance, afterId, limit);
+    }
+
+    /**
+     * 按条件查询某个类型半径内的商铺，筛选和排序只使用索引中的属性
+     * @param query 查询条件，半径和排序方式已经校验过
+     * @param afterKey 上一页最后一个商铺的排序值，第一页传 Double.NEGATIVE_INFINITY
+     * @param afterId 上一页最后一个商铺的id
+     * @param limit 最多返回的数量
+     */
+    public GeoGridIndex.Hits search(NearbyQuery query, double afterKey, long afterId, int limit) {
+        GeoGridIndex index = indexes.get(query.getTypeId().longValue());
+        if (index == null) {
+            return new GeoGridIndex.Hits(0);
+        }
+        return index.search(query.getX(), query.getY(), query.getRadius(), filterOf(query), rankOf(query.getSortBy()),
+                afterKey, afterId, limit);
+    }
+
+    /**
+     * 商铺新增或修改后调用，通知所有节点（包括本节点）更新这个商铺的位置
+     * @param shopId 商铺id
+     */
+    public void publishChange(Long shopId) {
+        stringRedisTemplate.convertAndSend(SHOP_GEO_CHANNEL, shopId.toString());
+    }
+
+    //从数据库读取商铺最新的类型和位置，同一个商铺的读取和写入在一把锁内，后读到的数据不会被先读到的覆盖
+    private void refresh(Long shopId) {
+        synchronized (shopLocks[(int) Math.floorMod(shopId, (long) shopLocks.length)]) {
+            Shop shop = shopMapper.selectById(shopId);
+            apply(shopId, shop);
+        }
+    }
+
+    private synchronized void apply(Long shopId, Shop shop) {
+        if (changedDuringLoad != null) {
+            changedDuringLoad.add(shopId);
+        }
+        Long oldTypeId = typeOfShop.get(shopId);
+        Long typeId = shop == null || shop.getX() == null || shop.getY() == null ? null : shop.getTypeId();
+        //1、类型变化或者商铺已经没有位置，从旧类型中删除
+        if (oldTypeId != null && !oldTypeId.equals(typeId)) {
+            indexes.get(oldTypeId).remove(shopId);
+            typeOfShop.remove(shopId);
+        }
+        if (typeId == null) {
+            return;
+        }
+        //2、写入新的位置
+        indexes.computeIfAbsent(typeId, key -> new GeoGridIndex(cellDegrees)).put(shopId, shop.getX(), shop.getY(), attributesOf(shop));
+        typeOfShop.put(shopId, typeId);
+    }
+
+    /**
+     * 从数据库流式读取所有商铺，在新的索引中加载完成后整体替换；
+     * 加载期间变化的商铺可能读到的是旧数据，替换后重新读取一次
+     */
+    private void reload() {
+        long begin = System.currentTimeMillis();
+        synchronized (this) {
+            changedDuringLoad = ConcurrentHashMap.newKeySet();
+        }
+        Set<Long> changed;
+        try {
+            Map<Long, GeoGridIndex> loadedIndexes = new ConcurrentHashMap<>();
+            Map<Long, Long> loadedTypes = new ConcurrentHashMap<>();
+            load(loadedIndexes, loadedTypes);
+            synchronized (this) {
+                indexes = loadedIndexes;
+                typeOfShop = loadedTypes;
+            }
+        } finally {
+            synchronized (this) {
+                changed = changedDuringLoad;
+                changedDuringLoad = null;
+            }
+        }
+        changed.forEach(this::refresh);
+        log.info("商铺位置索引加载完成，商铺数量：{}，加载期间变化：{}，耗时{}ms",
+                typeOfShop.size(), changed.size(), System.currentTimeMillis() - begin);
+    }
+
+    //流式读取数据库，按类型分组后批量加载
+    private void load(Map<Long, GeoGridIndex> indexes, Map<Long, Long> typeOfShop) {
+        Map<Long, Buffer> buffers = new HashMap<>();
+        shopMapper.scanLocations(context -> {
+            Shop shop = context.getResultObject();
+            if (shop.getX() == null || shop.getY() == null) {
+                return;
+            }
+            buffers.computeIfAbsent(shop.getTypeId(), typeId -> new Buffer()).add(shop.getId(), shop.getX(), shop.getY(), attributesOf(shop));
+        });
+        buffers.forEach((typeId, buffer) -> {
+            GeoGridIndex index = new GeoGridIndex(cellDegrees);
+            index.load(buffer.ids, buffer.xs, buffer.ys, buffer.attrs, buffer.size);
+            indexes.put(typeId, index);
+            for (int i = 0; i < buffer.size; i++) {
+                typeOfShop.put(buffer.ids[i], typeId);
+            }
+        });
+    }
+
+    //查询条件转换成属性过滤，没有条件时返回null
+    private static LongPredicate filterOf(NearbyQuery query) {
+        long minPrice = query.getMinPrice() == null ? 0 : query.getMinPrice();
+        long maxPrice = query.getMaxPrice() == null ? Long.MAX_VALUE : query.getMaxPrice();
+        int minScore = query.getMinScore() == null ? 0 : query.getMinScore();
+        boolean openNow = Boolean.TRUE.equals(query.getOpenNow());
+        if (minPrice <= 0 && maxPrice == Long.MAX_VALUE && minScore <= 0 && !openNow) {
+            return null;
+        }
+        int minute = openNow ? LocalTime.now().toSecondOfDay() / 60 : 0;
+        return attrs -> {
+            long price = attrs >>> PRICE_SHIFT & PRICE_MASK;
+            return price >= minPrice && price <= maxPrice
+                    && (attrs >>> SCORE_SHIFT & SCORE_MASK) >= minScore
+                    && (!openNow || isOpen(attrs, minute));
+        };
+    }
+
+    //排序方式转换成属性排序值，评分和销量从高到低，按距离排序时返回null
+    private static LongToIntFunction rankOf(NearbyQuery.SortBy sortBy) {
+        switch (sortBy) {
+            case SCORE:
+                return attrs -> -(int) (attrs >>> SCORE_SHIFT & SCORE_MASK);
+            case SOLD:
+                return attrs -> -(int) (attrs >>> SOLD_SHIFT & SOLD_MASK);
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isOpen(long attrs, int minute) {
+        int open = (int) (attrs >>> OPEN_SHIFT & MINUTE_MASK);
+        int close = (int) (attrs >>> CLOSE_SHIFT & MINUTE_MASK);
+        if (open == NO_HOURS) {
+            return false;
+        }
+        if (open == close) {
+            return true;
+        }
+        //打烊时间早于开门时间说明营业到第二天
+        return open < close ? minute >= open && minute < close : minute >= open || minute < close;
+    }
+
+    //把商铺的筛选和排序属性编码成一个long
+    private static long attributesOf(Shop shop) {
+        int open = NO_HOURS, close = NO_HOURS;
+        if (shop.getOpenHours() != null) {
+            Matcher matcher = OPEN_HOURS.matcher(shop.getOpenHours());
+            if (matcher.find()) {
+                open = Math.min(Integer.parseInt(matcher.group(1)) * 60 + Integer.parseInt(matcher.group(2)), 1440);
+                close = Math.min(Integer.parseInt(matcher.group(3)) * 60 + Integer.parseInt(matcher.group(4)), 1440);
+            }
+        }
+        return clamp(shop.getSold(), SOLD_MASK) << SOLD_SHIFT
+                | clamp(shop.getAvgPrice(), PRICE_MASK) << PRICE_SHIFT
+                | clamp(shop.getScore(), SCORE_MASK) << SCORE_SHIFT
+                | (long) open << OPEN_SHIFT
+                | (long) close << CLOSE_SHIFT;
+    }
+
+    private static long clamp(Number value, long mask) {
+        return value == null ? 0 : Math.max(0, Math.min(value.longValue(), mask));
+    }
+
+    /**
+     * 加载时每个类型的位置和属性，数组不够时扩容
+     */
+    private static class Buffer {
+        private long[] ids = new long[1024];
+        private double[] xs = new double[1024];
+        private double[] ys = new double[1024];
+        private long[] attrs = new long[1024];
+        private int size;
+
+        void add(long id, double x, double y, long attr) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+                attrs = Arrays.copyOf(attrs, size * 2);
+            }
+            ids[size] = id;
+            xs[size] = x;
+            ys[size] = y;
+            attrs[size] = attr;
+            size++;
+        }
+    }
+}
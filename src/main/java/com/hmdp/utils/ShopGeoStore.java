@@ -0,0 +1,421 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.IShopTypeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILDING_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILD_CHANGED_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILD_KEY;
+
+/**
+ * 维护redis中每个商铺类型的GEO集合 shop:geo:{typeId}
+ * 商铺新增或修改后按数据库中的最新数据增量更新；全量重建时流式读取数据库写入临时key，完成后RENAME替换正式key，
+ * 多个节点中同一时间只有一个节点重建；
+ * 定时对比数据库和redis，统计并修复缺失、位置不一致和多余的商铺
+ */
+@Component
+@Slf4j
+public class ShopGeoStore {
+
+    //每攒够多少条写入或检查一次redis
+    private static final int BATCH_SIZE = 1000;
+    //GEO保存的坐标有误差（52位geohash约0.6米），比较位置时允许的误差（度）
+    private static final double POSITION_TOLERANCE = 1e-5;
+
+    //定时检查的间隔，0表示关闭
+    @Value("${hmdp.shop.geo.check-interval-ms:3600000}")
+    private long checkIntervalMs;
+    //检查发现不一致时是否自动修复
+    @Value("${hmdp.shop.geo.check-repair:true}")
+    private boolean checkRepair;
+    //全量重建的锁和重建标记的过期时间，需要大于一次重建的耗时
+    @Value("${hmdp.shop.geo.rebuild-timeout-seconds:3600}")
+    private long rebuildTimeoutSeconds;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    //最近一次检查的结果
+    private volatile Map<String, Object> lastCheck;
+    private ScheduledExecutorService checkExecutor;
+
+    @PostConstruct
+    private void init() {
+        if (checkIntervalMs <= 0) {
+            return;
+        }
+        checkExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shop-geo-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkExecutor.scheduleWithFixedDelay(this::scheduledCheck, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (checkExecutor != null) {
+            checkExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 按数据库中商铺的最新类型和位置更新GEO集合，在商铺写入数据库（事务提交）之后调用
+     * 失败时只记录日志，由定时检查修复
+     * @param shopId 商铺id
+     */
+    public void sync(Long shopId) {
+        try {
+            //任意节点正在全量重建时记录修改的商铺，重建替换后重新同步，避免被重建读到的旧数据覆盖
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(SHOP_GEO_REBUILDING_KEY))) {
+                stringRedisTemplate.opsForSet().add(SHOP_GEO_REBUILD_CHANGED_KEY, shopId.toString());
+            }
+            Shop shop = shopMapper.selectById(shopId);
+            Long typeId = shop == null || shop.getX() == null || shop.getY() == null ? null : shop.getTypeId();
+            String member = shopId.toString();
+            List<ShopType> types = shopTypeService.queryAllList();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                //1、从其他类型的集合中删除，商铺修改了类型或者没有位置时不会留在旧集合中
+                for (ShopType type : types) {
+                    if (!type.getId().equals(typeId)) {
+                        stringConnection.zRem(SHOP_GEO_KEY + type.getId(), member);
+                    }
+                }
+                //2、写入当前类型的集合
+                if (typeId != null) {
+                    stringConnection.geoAdd(SHOP_GEO_KEY + typeId, new Point(shop.getX(), shop.getY()), member);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("同步商铺位置失败，shopId={}", shopId, e);
+        }
+    }
+
+    /**
+     * 全量重建所有类型的GEO集合
+     * 流式读取数据库，按类型分组后每1000条用一次pipeline写入临时key，全部写完后RENAME替换正式key，
+     * 重建过程中查询仍然读取旧的集合；线程被中断时放弃这次重建，正式key不受影响。
+     * 用redis锁保证多个节点不会同时写同一个临时key；重建期间所有节点修改的商铺记录在redis集合中，替换后重新同步
+     * @param onBatch 每写入一批后回调写入的数量
+     * @return 写入的商铺数量
+     */
+    public long rebuild(LongConsumer onBatch) {
+        ILock lock = new SimpleRedisLock("shop:geo:rebuild", stringRedisTemplate);
+        if (!lock.tryLock(rebuildTimeoutSeconds)) {
+            throw new IllegalStateException("商铺位置正在重建");
+        }
+        //先标记正在重建再读取数据库，之后提交的修改都会被记录
+        stringRedisTemplate.delete(SHOP_GEO_REBUILD_CHANGED_KEY);
+        stringRedisTemplate.opsForValue().set(SHOP_GEO_REBUILDING_KEY, "1", rebuildTimeoutSeconds, TimeUnit.SECONDS);
+        Set<Long> typeIds = new HashSet<>();
+        Map<Long, List<RedisGeoCommands.GeoLocation<String>>> buffer = new HashMap<>();
+        AtomicLong count = new AtomicLong();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        List<String> changed = new ArrayList<>();
+        try {
+            //1、流式读取数据库写入临时key
+            shopMapper.scanLocations(context -> {
+                if (Thread.currentThread().isInterrupted()) {
+                    interrupted.set(true);
+                    context.stop();
+                    return;
+                }
+                Shop shop = context.getResultObject();
+                if (shop.getX() == null || shop.getY() == null) {
+                    return;
+                }
+                buffer.computeIfAbsent(shop.getTypeId(), typeId -> new ArrayList<>())
+                        .add(new RedisGeoCommands.GeoLocation<>(shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+                if (count.incrementAndGet() % BATCH_SIZE == 0) {
+                    flushRebuild(buffer, typeIds, onBatch);
+                }
+            });
+            if (interrupted.get()) {
+                stringRedisTemplate.delete(rebuildKeys(typeIds));
+                log.warn("商铺位置重建被中断，已写入{}条，正式数据未修改", count.get());
+                return count.get();
+            }
+            flushRebuild(buffer, typeIds, onBatch);
+            //2、替换正式key，数据库中已经没有商铺的类型删除正式key
+            List<ShopType> types = shopTypeService.queryAllList();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Long typeId : typeIds) {
+                    stringConnection.rename(SHOP_GEO_REBUILD_KEY + typeId, SHOP_GEO_KEY + typeId);
+                }
+                for (ShopType type : types) {
+                    if (!typeIds.contains(type.getId())) {
+                        stringConnection.del(SHOP_GEO_KEY + type.getId());
+                    }
+                }
+                return null;
+            });
+            //3、重建期间修改过的商铺重新同步，同步前先清除重建标记，同步不再记录
+            stringRedisTemplate.delete(SHOP_GEO_REBUILDING_KEY);
+            Set<String> members = stringRedisTemplate.opsForSet().members(SHOP_GEO_REBUILD_CHANGED_KEY);
+            if (members != null) {
+                changed.addAll(members);
+            }
+            changed.forEach(member -> sync(Long.valueOf(member)));
+        } finally {
+            stringRedisTemplate.delete(Arrays.asList(SHOP_GEO_REBUILDING_KEY, SHOP_GEO_REBUILD_CHANGED_KEY));
+            lock.unLock();
+        }
+        log.info("商铺位置重建完成，商铺数量：{}，重建期间修改的商铺：{}", count.get(), changed.size());
+        return count.get();
+    }
+
+    /**
+     * 对比数据库和redis中的商铺位置
+     * 数据库按批流式读取，每批用一次pipeline查询GEOPOS；最后用ZSCAN找出redis中多余的商铺
+     * @param repair 是否修复不一致的数据
+     * @return 检查的商铺数量、缺失、位置不一致、多余的数量和耗时
+     */
+    public Map<String, Object> check(boolean repair) {
+        long begin = System.currentTimeMillis();
+        AtomicLong checked = new AtomicLong();
+        AtomicLong missing = new AtomicLong();
+        AtomicLong moved = new AtomicLong();
+        //1、逐批对比数据库中的商铺，同时记录每个类型应该有哪些商铺
+        Map<Long, Set<String>> expected = new HashMap<>();
+        List<Shop> batch = new ArrayList<>(BATCH_SIZE);
+        shopMapper.scanLocations(context -> {
+            Shop shop = context.getResultObject();
+            if (shop.getX() == null || shop.getY() == null) {
+                return;
+            }
+            expected.computeIfAbsent(shop.getTypeId(), typeId -> new HashSet<>()).add(shop.getId().toString());
+            batch.add(shop);
+            if (batch.size() >= BATCH_SIZE) {
+                checkBatch(batch, repair, missing, moved);
+                checked.addAndGet(batch.size());
+                batch.clear();
+            }
+        });
+        checkBatch(batch, repair, missing, moved);
+        checked.addAndGet(batch.size());
+        //2、扫描每个类型的集合，找出数据库中不存在或者已经换了类型的商铺
+        Set<Long> typeIds = new HashSet<>(expected.keySet());
+        shopTypeService.queryAllList().forEach(type -> typeIds.add(type.getId()));
+        long extra = 0;
+        for (Long typeId : typeIds) {
+            extra += removeExtra(typeId, expected.getOrDefault(typeId, new HashSet<>()), repair);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("checked", checked.get());
+        result.put("missing", missing.get());
+        result.put("moved", moved.get());
+        result.put("extra", extra);
+        result.put("repaired", repair);
+        result.put("elapsedMillis", System.currentTimeMillis() - begin);
+        result.put("checkTime", System.currentTimeMillis());
+        lastCheck = result;
+        if (missing.get() + moved.get() + extra > 0) {
+            log.warn("商铺位置和数据库不一致：{}", result);
+        }
+        return result;
+    }
+
+    public Map<String, Object> lastCheck() {
+        return lastCheck;
+    }
+
+    //定时检查，多个节点中同一时间只有一个节点执行，锁在检查间隔内不释放，一个间隔内只检查一次
+    private void scheduledCheck() {
+        try {
+            ILock lock = new SimpleRedisLock("shop:geo:check", stringRedisTemplate);
+            if (!lock.tryLock(Math.max(1, checkIntervalMs / 1000))) {
+                return;
+            }
+            check(checkRepair);
+        } catch (Exception e) {
+            log.error("检查商铺位置失败", e);
+        }
+    }
+
+    private void flushRebuild(Map<Long, List<RedisGeoCommands.GeoLocation<String>>> buffer, Set<Long> typeIds, LongConsumer onBatch) {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            buffer.forEach((typeId, locations) -> {
+                //第一次写入某个类型时删除上次中断留下的临时key
+                if (typeIds.add(typeId)) {
+                    stringConnection.del(SHOP_GEO_REBUILD_KEY + typeId);
+                }
+                stringConnection.geoAdd(SHOP_GEO_REBUILD_KEY + typeId, locations);
+            });
+            return null;
+        });
+        long size = buffer.values().stream().mapToLong(List::size).sum();
+        buffer.clear();
+        onBatch.accept(size);
+    }
+
+    private static List<String> rebuildKeys(Set<Long> typeIds) {
+        List<String> keys = new ArrayList<>(typeIds.size());
+        typeIds.forEach(typeId -> keys.add(SHOP_GEO_REBUILD_KEY + typeId));
+        return keys;
+    }
+
+    //一次pipeline查询这一批商铺在redis中的位置，缺失或者位置不一致时计数并按需修复
+    private void checkBatch(List<Shop> batch, boolean repair, AtomicLong missing, AtomicLong moved) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Object> positions = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Shop shop : batch) {
+                stringConnection.geoPos(SHOP_GEO_KEY + shop.getTypeId(), shop.getId().toString());
+            }
+            return null;
+        });
+        //商铺id -> redis中的位置，缺失时为null
+        Map<Long, Point> stale = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Shop shop = batch.get(i);
+            List<?> points = (List<?>) positions.get(i);
+            Point point = points == null || points.isEmpty() ? null : (Point) points.get(0);
+            if (point == null) {
+                missing.incrementAndGet();
+                stale.put(shop.getId(), null);
+            } else if (!samePosition(point, shop)) {
+                moved.incrementAndGet();
+                stale.put(shop.getId(), point);
+            }
+        }
+        if (!repair || stale.isEmpty()) {
+            return;
+        }
+        List<Shop> repairs = confirmStale(batch, stale);
+        if (repairs.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Shop shop : repairs) {
+                stringConnection.geoAdd(SHOP_GEO_KEY + shop.getTypeId(), new Point(shop.getX(), shop.getY()), shop.getId().toString());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 重新读取数据库，扫描之后被修改的商铺按最新的类型和位置修复，不会用扫描到的旧数据覆盖sync写入的位置；
+     * 已经删除、没有位置的商铺交给removeExtra处理，类型和位置都没变并且redis已经被sync修复的商铺跳过
+     * @param stale 商铺id -> 检查时redis中的位置
+     * @return 需要写入GEO集合的商铺
+     */
+    private List<Shop> confirmStale(List<Shop> batch, Map<Long, Point> stale) {
+        Map<Long, Long> scannedTypes = new HashMap<>();
+        batch.forEach(shop -> scannedTypes.put(shop.getId(), shop.getTypeId()));
+        List<Shop> repairs = new ArrayList<>();
+        for (Shop shop : shopMapper.selectBatchIds(stale.keySet())) {
+            if (shop.getX() == null || shop.getY() == null) {
+                continue;
+            }
+            Point point = stale.get(shop.getId());
+            if (point != null && shop.getTypeId().equals(scannedTypes.get(shop.getId())) && samePosition(point, shop)) {
+                continue;
+            }
+            repairs.add(shop);
+        }
+        return repairs;
+    }
+
+    private static boolean samePosition(Point point, Shop shop) {
+        return Math.abs(point.getX() - shop.getX()) <= POSITION_TOLERANCE
+                && Math.abs(point.getY() - shop.getY()) <= POSITION_TOLERANCE;
+    }
+
+    /**
+     * 扫描一个类型的集合，数据库中不属于这个类型的商铺计数并按需删除
+     * 扫描数据库之后新增或者修改了类型的商铺也不在expected中，删除前重新读取数据库确认
+     */
+    private long removeExtra(Long typeId, Set<String> expected, boolean repair) {
+        String key = SHOP_GEO_KEY + typeId;
+        List<String> extra = new ArrayList<>();
+        try (Cursor<ZSetOperations.TypedTuple<String>> cursor = stringRedisTemplate.opsForZSet()
+                .scan(key, ScanOptions.scanOptions().count(BATCH_SIZE).build())) {
+            while (cursor.hasNext()) {
+                String member = cursor.next().getValue();
+                if (!expected.contains(member)) {
+                    extra.add(member);
+                }
+            }
+        }
+        extra = confirmExtra(typeId, extra);
+        if (repair) {
+            for (int i = 0; i < extra.size(); i += BATCH_SIZE) {
+                stringRedisTemplate.opsForZSet().remove(key, extra.subList(i, Math.min(i + BATCH_SIZE, extra.size())).toArray());
+            }
+        }
+        return extra.size();
+    }
+
+    //重新读取数据库，只保留仍然不存在、没有位置或者不是这个类型的商铺
+    private List<String> confirmExtra(Long typeId, List<String> members) {
+        List<String> confirmed = new ArrayList<>();
+        for (int i = 0; i < members.size(); i += BATCH_SIZE) {
+            List<String> batch = members.subList(i, Math.min(i + BATCH_SIZE, members.size()));
+            List<Long> ids = new ArrayList<>(batch.size());
+            for (String member : batch) {
+                try {
+                    ids.add(Long.valueOf(member));
+                } catch (NumberFormatException e) {
+                    confirmed.add(member);
+                }
+            }
+            Map<Long, Shop> shops = new HashMap<>();
+            if (!ids.isEmpty()) {
+                shopMapper.selectBatchIds(ids).forEach(shop -> shops.put(shop.getId(), shop));
+            }
+            for (Long id : ids) {
+                Shop shop = shops.get(id);
+                if (shop == null || shop.getX() == null || shop.getY() == null || !typeId.equals(shop.getTypeId())) {
+                    confirmed.add(id.toString());
+                }
+            }
+        }
+        return confirmed;
+    }
+}
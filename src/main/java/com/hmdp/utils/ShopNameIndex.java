@@ -0,0 +1,188 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static com.hmdp.utils.RedisConstants.SHOP_NAME_CHANNEL;
+
+/**
+ * JVM内的商铺名称索引
+ * 对商铺名称和商圈建立n-gram倒排索引，启动时从数据库流式加载；商铺新增或修改后广播商铺id，
+ * 每个节点重新读取这个商铺的名称更新索引，并定时整体重新加载，补上订阅断开期间丢失的消息。开启后按名称查询商铺不再扫描数据库
+ */
+@Component
+@Slf4j
+public class ShopNameIndex {
+
+    //是否开启，关闭时按名称查询使用数据库like
+    @Value("${hmdp.shop.name-index.enabled:false}")
+    private boolean enabled;
+    //整体重新加载的间隔，0表示不重新加载
+    @Value("${hmdp.shop.name-index.reload-interval-ms:3600000}")
+    private long reloadIntervalMs;
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final NgramIndex index = new NgramIndex();
+    //同一个商铺的更新按顺序执行，按商铺id分段加锁
+    private final Object[] shopLocks = IntStream.range(0, 64).mapToObj(i -> new Object()).toArray();
+    //加载期间收到变化消息的商铺，加载完成后重新读取；不在加载时为null
+    private Set<Long> changedDuringLoad;
+    private ScheduledExecutorService reloadExecutor;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        //1、先订阅商铺变化消息，加载期间的变化在加载完成后补上
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            try {
+                refresh(Long.valueOf(body));
+            } catch (NumberFormatException e) {
+                log.warn("无效的商铺名称消息：{}", body);
+            }
+        }, new ChannelTopic(SHOP_NAME_CHANNEL));
+        //2、加载所有商铺的名称和商圈
+        reload();
+        //3、定时重新加载
+        if (reloadIntervalMs <= 0) {
+            return;
+        }
+        reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shop-name-index-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloadExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                log.error("重新加载商铺名称索引失败", e);
+            }
+        }, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查询名称或商圈中包含关键字的商铺，名称匹配的排在商圈匹配之前，前缀匹配的排在中间匹配之前；
+     * 关键字只有一个字符时只匹配名称前缀
+     * @see NgramIndex#search
+     */
+    public NgramIndex.Hits search(String keyword, double afterKey, long afterId, int limit) {
+        return index.search(keyword, afterKey, afterId, limit);
+    }
+
+    /**
+     * 商铺新增或修改后调用，通知所有节点（包括本节点）更新这个商铺的名称
+     * @param shopId 商铺id
+     */
+    public void publishChange(Long shopId) {
+        stringRedisTemplate.convertAndSend(SHOP_NAME_CHANNEL, shopId.toString());
+    }
+
+    //从数据库读取商铺最新的名称和商圈，同一个商铺的读取和写入在一把锁内，后读到的数据不会被先读到的覆盖
+    private void refresh(Long shopId) {
+        synchronized (shopLocks[(int) Math.floorMod(shopId, (long) shopLocks.length)]) {
+            Shop shop = shopMapper.selectById(shopId);
+            apply(shopId, shop);
+        }
+    }
+
+    private synchronized void apply(Long shopId, Shop shop) {
+        if (changedDuringLoad != null) {
+            changedDuringLoad.add(shopId);
+        }
+        if (shop == null) {
+            index.remove(shopId);
+            return;
+        }
+        index.put(shopId, shop.getName(), shop.getArea());
+    }
+
+    /**
+     * 从数据库流式读取所有商铺后整体替换索引；
+     * 加载期间变化的商铺可能读到的是旧数据，替换后重新读取一次
+     */
+    private void reload() {
+        long begin = System.currentTimeMillis();
+        synchronized (this) {
+            changedDuringLoad = ConcurrentHashMap.newKeySet();
+        }
+        Set<Long> changed;
+        try {
+            Buffer buffer = new Buffer();
+            shopMapper.scanNames(context -> {
+                Shop shop = context.getResultObject();
+                buffer.add(shop.getId(), shop.getName(), shop.getArea());
+            });
+            synchronized (this) {
+                index.load(buffer.ids, buffer.names, buffer.areas, buffer.size);
+            }
+        } finally {
+            synchronized (this) {
+                changed = changedDuringLoad;
+                changedDuringLoad = null;
+            }
+        }
+        changed.forEach(this::refresh);
+        log.info("商铺名称索引加载完成，商铺数量：{}，加载期间变化：{}，耗时{}ms",
+                index.size(), changed.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 加载时的名称和商圈，数组不够时扩容
+     */
+    private static class Buffer {
+        private long[] ids = new long[1024];
+        private String[] names = new String[1024];
+        private String[] areas = new String[1024];
+        private int size;
+
+        void add(long id, String name, String area) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+                areas = Arrays.copyOf(areas, size * 2);
+            }
+            ids[size] = id;
+            names[size] = name;
+            areas[size] = area;
+            size++;
+        }
+    }
+}
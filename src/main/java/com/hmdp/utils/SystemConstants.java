@@ -5,4 +5,12 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    //附近商铺的查询半径，单位米
+    public static final double NEARBY_RADIUS = 5000;
+    //附近商铺允许查询的最大半径，单位米
+    public static final double NEARBY_MAX_RADIUS = 20000;
+    //redis查询附近商铺时坐标保留的小数位数，同一个网格（约100米）内的用户共用一份结果
+    public static final int NEARBY_COORDINATE_SCALE = 3;
+    //redis查询附近商铺时第一次保存的商铺数量，翻页超过时按倍数增加
+    public static final long NEARBY_MAX_RESULTS = 1000;
 }
@@ -0,0 +1,7 @@
+-- 从一个库存分段中取出一个库存，用户所在的分段库存不足时调用
+-- KEYS[1] 分段库存key seckill:stock:{分段所在分区}:优惠券id:i
+if((tonumber(redis.call("get", KEYS[1])) or 0) <= 0) then
+    return 0
+end
+redis.call("incrby", KEYS[1], -1)
+return 1
@@ -5,28 +5,33 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3订单id
 local orderId = ARGV[3]
--- 2.数据key
-
---2.1库存key
-local stockKey = "seckill:stock:" .. voucherId
--- 2.2订单key
-local orderKey = "seckill:order:" .. voucherId
+-- 1.4是否已经从其他分段取到了库存，取到时不再扣减这个分段的库存
+local reserved = ARGV[4] == "1"
+-- 2.数据key，三个key使用相同的hash tag，在redis集群中位于同一个slot
+--2.1库存key seckill:stock:{分区}:优惠券id，分段库存时是用户所在的分段 seckill:stock:{分段所在分区}:优惠券id:i
+local stockKey = KEYS[1]
+-- 2.2订单key seckill:order:{分区}:优惠券id，分段库存时是用户所在分段的 seckill:order:{分段所在分区}:优惠券id:i
+local orderKey = KEYS[2]
+-- 2.3订单队列key stream.orders:{分区}
+local streamKey = KEYS[3]
 
 -- 3.脚本业务
-if(tonumber(redis.call("get", stockKey)) <=0) then
-    -- 3.1库存不足
+if((not reserved) and (tonumber(redis.call("get", stockKey)) or 0) <= 0) then
+    -- 3.1库存不足，分段库存时由调用方从其他分段取库存
     return 1
 end
 --3.2判断用户是否下单
 if(redis.call("sismember", orderKey, userId) == 1) then
-    -- 3.3用户已经下单
+    -- 3.3用户已经下单，已经取到的库存由调用方归还
     return 2
 end
 -- 3.4扣减库存
-redis.call("incrby", stockKey, -1)
+if(not reserved) then
+    redis.call("incrby", stockKey, -1)
+end
 
 -- 3.5添加订单
 redis.call("sadd", orderKey, userId)
--- 3.6发送消息到队列中xadd stream.orders * k1 v1 k2 v2
-redis.call("xadd", "stream.orders", "*", "userId", userId, "voucherId", voucherId, "id", orderId)
-return 0
\ No newline at end of file
+-- 3.6发送消息到队列中xadd stream.orders:{n} * k1 v1 k2 v2
+redis.call("xadd", streamKey, "*", "userId", userId, "voucherId", voucherId, "id", orderId)
+return 0
@@ -0,0 +1,11 @@
+-- 申请或续期机器id租约
+-- 1.租约已经属于自己，续期
+if(redis.call('get', KEYS[1]) == ARGV[1]) then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+-- 2.租约不存在时申请
+if(redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2])) then
+    return 1
+end
+-- 3.机器id已被其他节点使用
+return 0
@@ -1,30 +1,70 @@
 package com.hmdp;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.NearbyQuery;
+import com.hmdp.dto.NearbyResult;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
 import com.hmdp.service.impl.ShopServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Range;
 import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.annotation.Resource;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-@SpringBootTest
+@SpringBootTest(properties = {
+        "hmdp.seckill.order.partitions=" + HmDianPingApplicationTests.PARTITIONS,
+        "hmdp.seckill.order.owned-partitions=0,1,2,3"})
 class HmDianPingApplicationTests {
+    //测试使用的订单队列分区数量，本节点消费全部分区
+    static final int PARTITIONS = 4;
+    //测试下单用户的起始id，不和真实用户重复
+    private static final long TEST_USER_ID = 9_000_000_000L;
+
+    @Resource
+    private IVoucherService voucherService;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
     @Resource
     private ShopServiceImpl shopService;
 
@@ -92,4 +132,267 @@ class HmDianPingApplicationTests {
             stringRedisTemplate.opsForGeo().add(key,locations);
         }
     }
+
+    //订单队列分区：每个优惠券的订单消息只进入 stream.orders:{voucherId % partitions}，并且每个订单只被消费一次
+    @Test
+    void testOrderStreamPartitions() throws Exception {
+        int users = 200;
+        //1、每个分区创建一个秒杀券，库存足够所有用户下单
+        List<Long> voucherIds = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            voucherIds.add(createSeckillVoucher(users));
+        }
+        try {
+            //2、并发秒杀，记录每个优惠券返回的订单id
+            String begin = System.currentTimeMillis() + "-0";
+            Map<Long, Set<Long>> orderIds = seckillConcurrently(voucherIds, users);
+            //3、每个优惠券的消息只出现在自己的分区中
+            Map<Long, Set<Long>> streamOrderIds = new HashMap<>();
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(
+                        SeckillKeys.streamKey(partition), Range.rightUnbounded(Range.Bound.inclusive(begin)));
+                for (MapRecord<String, Object, Object> record : records) {
+                    long voucherId = Long.parseLong(record.getValue().get("voucherId").toString());
+                    if (!voucherIds.contains(voucherId)) {
+                        continue;
+                    }
+                    assertEquals(SeckillKeys.partition(voucherId, PARTITIONS), partition);
+                    assertTrue(streamOrderIds.computeIfAbsent(voucherId, k -> new HashSet<>())
+                            .add(Long.parseLong(record.getValue().get("id").toString())));
+                }
+            }
+            for (Long voucherId : voucherIds) {
+                assertEquals(users, orderIds.get(voucherId).size());
+                assertEquals(orderIds.get(voucherId), streamOrderIds.get(voucherId));
+            }
+            //4、订单消费者处理完后，数据库中每个订单恰好一条，库存恰好扣减一次
+            awaitOrders(voucherIds, users * voucherIds.size());
+            for (Long voucherId : voucherIds) {
+                List<VoucherOrder> orders = voucherOrderService.query().eq("voucher_id", voucherId).list();
+                assertEquals(orderIds.get(voucherId), orders.stream().map(VoucherOrder::getId).collect(Collectors.toSet()));
+                assertEquals(users, orders.size());
+                assertEquals(0, seckillVoucherService.getById(voucherId).getStock());
+            }
+        } finally {
+            removeSeckillVouchers(voucherIds);
+        }
+    }
+
+    //分段库存：请求数量大于库存时，下单成功的数量和写入数据库的订单数量必须等于初始库存，任何分段都不能扣成负数；
+    //每个分段使用不同分区的hash tag，每个用户只出现在自己分段的下单用户集合中
+    @Test
+    void testSeckillStockSegments() throws Exception {
+        int users = 3000;
+        int stock = 2000;
+        Object target = AopTestUtils.getTargetObject(voucherService);
+        for (int segments : new int[]{1, PARTITIONS}) {
+            //1、按分段数量创建秒杀券
+            ReflectionTestUtils.setField(target, "stockSegments", segments);
+            List<Long> voucherIds = new ArrayList<>();
+            try {
+                long voucherId = createSeckillVoucher(stock);
+                voucherIds.add(voucherId);
+                //2、并发秒杀
+                Map<Long, Set<Long>> orderIds = seckillConcurrently(voucherIds, users);
+                assertEquals(stock, orderIds.get(voucherId).size());
+                //3、每个分段的剩余库存都不小于0，并且全部卖完
+                List<String> stockKeys = new ArrayList<>();
+                List<String> orderKeys = new ArrayList<>();
+                Set<Integer> partitions = new HashSet<>();
+                if (segments == 1) {
+                    stockKeys.add(SeckillKeys.stockKey(voucherId, PARTITIONS));
+                    orderKeys.add(SeckillKeys.orderKey(voucherId, PARTITIONS));
+                } else {
+                    for (int i = 0; i < segments; i++) {
+                        stockKeys.add(SeckillKeys.segmentStockKey(voucherId, i, PARTITIONS));
+                        orderKeys.add(SeckillKeys.segmentOrderKey(voucherId, i, PARTITIONS));
+                        partitions.add(SeckillKeys.segmentPartition(voucherId, i, PARTITIONS));
+                    }
+                    assertEquals(segments, partitions.size());
+                }
+                long remaining = 0;
+                for (String key : stockKeys) {
+                    long left = Long.parseLong(stringRedisTemplate.opsForValue().get(key));
+                    assertTrue(left >= 0);
+                    remaining += left;
+                }
+                assertEquals(0, remaining);
+                //4、下单用户按id落在自己的分段中
+                long buyers = 0;
+                for (int i = 0; i < orderKeys.size(); i++) {
+                    Set<String> members = stringRedisTemplate.opsForSet().members(orderKeys.get(i));
+                    for (String member : members) {
+                        assertEquals(i, Math.floorMod(Long.parseLong(member), (long) orderKeys.size()));
+                    }
+                    buyers += members.size();
+                }
+                assertEquals(stock, buyers);
+                //5、数据库中的订单数量等于初始库存
+                awaitOrders(voucherIds, stock);
+                assertEquals(0, seckillVoucherService.getById(voucherId).getStock());
+                List<String> keys = new ArrayList<>(stockKeys);
+                keys.addAll(orderKeys);
+                keys.add(SECKILL_STOCK_SEGMENTS_KEY + voucherId);
+                stringRedisTemplate.delete(keys);
+            } finally {
+                ReflectionTestUtils.setField(target, "stockSegments", 1);
+                removeSeckillVouchers(voucherIds);
+            }
+        }
+    }
+
+    //附近商铺超过NEARBY_MAX_RESULTS个时，游标和页码翻页都能取到全部商铺，按距离递增，没有重复
+    @Test
+    void testNearbyPagingBeyondMaxResults() {
+        int typeId = 900_001;
+        int shops = (int) SystemConstants.NEARBY_MAX_RESULTS + 500;
+        double x = 120.15, y = 30.3;
+        //1、在测试类型下写入商铺位置，商铺详情直接写入缓存，不需要数据库中有这些商铺
+        String geoKey = SHOP_GEO_KEY + typeId;
+        stringRedisTemplate.delete(geoKey);
+        List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(shops);
+        Map<Long, Shop> cached = new HashMap<>();
+        for (int i = 0; i < shops; i++) {
+            long id = 9_100_000_000L + i;
+            Point point = new Point(x + (i % 50) * 0.0005, y + (i / 50) * 0.0005);
+            locations.add(new RedisGeoCommands.GeoLocation<>(String.valueOf(id), point));
+            Shop shop = new Shop();
+            shop.setId(id);
+            shop.setTypeId((long) typeId);
+            shop.setX(point.getX());
+            shop.setY(point.getY());
+            cached.put(id, shop);
+        }
+        stringRedisTemplate.opsForGeo().add(geoKey, locations);
+        cacheClient.setManyWithLogicalExpire(CACHE_SHOP_KEY, cached, 10L, TimeUnit.MINUTES);
+        try {
+            //2、游标翻页
+            NearbyQuery query = new NearbyQuery();
+            query.setTypeId(typeId);
+            query.setX(x);
+            query.setY(y);
+            List<Shop> paged = new ArrayList<>();
+            do {
+                NearbyResult result = (NearbyResult) shopService.queryShopNearby(query).getData();
+                result.getList().forEach(shop -> paged.add((Shop) shop));
+                query.setCursor(result.getCursor());
+            } while (query.getCursor() != null);
+            assertEquals(shops, paged.size());
+            assertEquals(shops, paged.stream().map(Shop::getId).distinct().count());
+            for (int i = 1; i < paged.size(); i++) {
+                assertTrue(paged.get(i - 1).getDistance() <= paged.get(i).getDistance());
+            }
+            //3、页码翻页，超过NEARBY_MAX_RESULTS的页和游标翻页的结果相同
+            int current = (int) SystemConstants.NEARBY_MAX_RESULTS / SystemConstants.DEFAULT_PAGE_SIZE + 1;
+            List<?> page = (List<?>) shopService.queryShopByType(typeId, current, x, y).getData();
+            int start = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+            assertEquals(SystemConstants.DEFAULT_PAGE_SIZE, page.size());
+            for (int i = 0; i < page.size(); i++) {
+                assertEquals(paged.get(start + i).getId(), ((Shop) page.get(i)).getId());
+            }
+        } finally {
+            stringRedisTemplate.delete(geoKey);
+            cacheClient.delete(cached.keySet().stream().map(id -> CACHE_SHOP_KEY + id).collect(Collectors.toList()));
+        }
+    }
+
+    //缓存未命中时并发查询同一个key，只有一个线程查询数据库，所有线程拿到相同的结果
+    @Test
+    void testCacheMissSingleFlight() throws InterruptedException {
+        String prefix = "cache:test:singleflight:";
+        long id = 1L;
+        stringRedisTemplate.delete(prefix + id);
+        int threads = 100;
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setName("singleflight");
+        AtomicInteger dbQueries = new AtomicInteger();
+        Map<Integer, Shop> results = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            ex.submit(() -> {
+                try {
+                    results.put(index, cacheClient.getPathThrough(prefix, id, Shop.class, shopId -> {
+                        dbQueries.incrementAndGet();
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return shop;
+                    }, 10L, TimeUnit.SECONDS));
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        System.out.println("threads = " + threads + ", db queries = " + dbQueries.get());
+        assertEquals(1, dbQueries.get());
+        assertEquals(threads, results.size());
+        results.values().forEach(result -> assertEquals(shop, result));
+        stringRedisTemplate.delete(prefix + id);
+    }
+
+    //通过VoucherService创建秒杀券，库存写入redis
+    private long createSeckillVoucher(int stock) {
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("test");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(100L);
+        voucher.setType(1);
+        voucher.setStock(stock);
+        voucher.setBeginTime(LocalDateTime.now().minusDays(1));
+        voucher.setEndTime(LocalDateTime.now().plusDays(1));
+        voucherService.addSeckillVoucher(voucher);
+        return voucher.getId();
+    }
+
+    //每个优惠券由users个不同用户并发秒杀，返回每个优惠券下单成功的订单id
+    private Map<Long, Set<Long>> seckillConcurrently(List<Long> voucherIds, int users) throws InterruptedException {
+        Map<Long, Set<Long>> orderIds = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(voucherIds.size() * users);
+        for (Long voucherId : voucherIds) {
+            orderIds.put(voucherId, ConcurrentHashMap.newKeySet());
+            for (int i = 0; i < users; i++) {
+                long userId = TEST_USER_ID + i;
+                ex.submit(() -> {
+                    try {
+                        UserDTO user = new UserDTO();
+                        user.setId(userId);
+                        UserHolder.saveUser(user);
+                        Result result = voucherOrderService.secKillVoucher(voucherId);
+                        if (result.getSuccess()) {
+                            orderIds.get(voucherId).add((Long) result.getData());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        UserHolder.removeUser();
+                        latch.countDown();
+                    }
+                });
+            }
+        }
+        latch.await();
+        return orderIds;
+    }
+
+    //等待订单消费者把订单写入数据库
+    private void awaitOrders(List<Long> voucherIds, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (voucherOrderService.query().in("voucher_id", voucherIds).count() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+        assertEquals(expected, voucherOrderService.query().in("voucher_id", voucherIds).count());
+    }
+
+    private void removeSeckillVouchers(List<Long> voucherIds) {
+        voucherOrderService.remove(new QueryWrapper<VoucherOrder>().in("voucher_id", voucherIds));
+        seckillVoucherService.removeByIds(voucherIds);
+        voucherService.removeByIds(voucherIds);
+    }
 }
@@ -0,0 +1,145 @@
+package com.hmdp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单队列分区基准测试：20000条订单消息按优惠券id分到1、2、4、8个分区，每个分区一个消费线程，
+ * 和订单消费者一样每次XREADGROUP读取一批、处理后XACK，测量排空全部消息的耗时，吞吐量 = 消息数量 / 耗时。
+ * processMicros 模拟每批订单写入数据库的耗时，为0时只测量redis本身；
+ * 分区使用 {分区} hash tag，指定 -Dredis.nodes 时连接redis集群，各分区分布在不同分片上
+ * 运行：mvn test-compile 后执行 main 方法，单机redis通过 -Dredis.host -Dredis.port -Dredis.password 指定
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrderStreamPartitionBenchmark {
+
+    private static final int MESSAGES = 20000;
+    private static final int BATCH_SIZE = 100;
+    private static final String GROUP_NAME = "g1";
+
+    @Param({"1", "2", "4", "8"})
+    private int partitions;
+
+    @Param({"0", "2000"})
+    private long processMicros;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private ExecutorService executor;
+    private List<String> keys;
+
+    @Setup
+    public void setup() {
+        String nodes = System.getProperty("redis.nodes");
+        if (nodes != null) {
+            RedisClusterConfiguration configuration = new RedisClusterConfiguration(Arrays.asList(nodes.split(",")));
+            configuration.setPassword(System.getProperty("redis.password", "123456"));
+            connectionFactory = new LettuceConnectionFactory(configuration);
+        } else {
+            RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                    System.getProperty("redis.host", "192.168.100.128"),
+                    Integer.parseInt(System.getProperty("redis.port", "6379")));
+            configuration.setPassword(System.getProperty("redis.password", "123456"));
+            connectionFactory = new LettuceConnectionFactory(configuration);
+        }
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        executor = Executors.newFixedThreadPool(partitions);
+        keys = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            keys.add("bench.orders:{" + i + "}");
+        }
+    }
+
+    //每次测量前重新写入消息并创建消费者组
+    @Setup(Level.Invocation)
+    public void fill() {
+        stringRedisTemplate.delete(keys);
+        for (String key : keys) {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    ((StringRedisConnection) connection).xGroupCreate(key, ReadOffset.from("0"), GROUP_NAME, true));
+        }
+        for (int partition = 0; partition < partitions; partition++) {
+            String key = keys.get(partition);
+            int count = MESSAGES / partitions;
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (int i = 0; i < count; i++) {
+                    Map<String, String> body = new HashMap<>();
+                    body.put("userId", String.valueOf(i));
+                    body.put("voucherId", String.valueOf(key.hashCode()));
+                    body.put("id", String.valueOf(i));
+                    stringConnection.xAdd(key, body);
+                }
+                return null;
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        stringRedisTemplate.delete(keys);
+        executor.shutdownNow();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public long drain() throws Exception {
+        List<Future<Long>> futures = new ArrayList<>(partitions);
+        for (String key : keys) {
+            futures.add(executor.submit(() -> drain(key)));
+        }
+        long drained = 0;
+        for (Future<Long> future : futures) {
+            drained += future.get();
+        }
+        return drained;
+    }
+
+    //一个分区只由一个消费者读取，读一批、处理、ACK，直到没有消息
+    private long drain(String key) throws InterruptedException {
+        long drained = 0;
+        Consumer consumer = Consumer.from(GROUP_NAME, "c1");
+        while (true) {
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(consumer,
+                    StreamReadOptions.empty().count(BATCH_SIZE), StreamOffset.create(key, ReadOffset.lastConsumed()));
+            if (records == null || records.isEmpty()) {
+                return drained;
+            }
+            if (processMicros > 0) {
+                TimeUnit.MICROSECONDS.sleep(processMicros);
+            }
+            stringRedisTemplate.opsForStream().acknowledge(key, GROUP_NAME,
+                    records.stream().map(MapRecord::getId).toArray(RecordId[]::new));
+            drained += records.size();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrderStreamPartitionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,60 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisIdWorker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * id生成器基准测试：每次INCR 与 号段模式 的吞吐量对比
+ * 运行：mvn test-compile 后执行 main 方法，redis地址通过 -Dredis.host -Dredis.port -Dredis.password 指定
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(8)
+@Fork(1)
+public class RedisIdWorkerBenchmark {
+
+    //0表示每次生成id都执行一次INCR
+    @Param({"0", "1000"})
+    private int segmentSize;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisIdWorker redisIdWorker;
+
+    @Setup
+    public void setup() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "192.168.100.128"),
+                Integer.parseInt(System.getProperty("redis.port", "6379")));
+        configuration.setPassword(System.getProperty("redis.password", "123456"));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        redisIdWorker = new RedisIdWorker(stringRedisTemplate, segmentSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        redisIdWorker.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return redisIdWorker.nextId("bench");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RedisIdWorkerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
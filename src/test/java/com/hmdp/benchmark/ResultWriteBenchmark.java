@@ -0,0 +1,124 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RawJson;
+import com.hmdp.utils.ResultWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 接口响应基准测试：从redis读到字节之后，解码为对象再用Jackson序列化 与 直接把json写入Result 的耗时和每次请求分配的字节数
+ * 每次请求分配的字节数看gc profiler输出的 gc.alloc.rate.norm（按线程统计的分配字节数 / 调用次数）
+ * 运行：mvn test-compile 后执行 main 方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultWriteBenchmark {
+
+    //和Spring Boot的配置一致：忽略null属性，时间输出为字符串
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final JsonCacheCodec codec = new JsonCacheCodec(objectMapper);
+    //响应输出流：只统计字节数，不保存内容
+    private final CountingOutputStream out = new CountingOutputStream();
+
+    //redis中的商铺缓存
+    private byte[] shopBytes;
+    //商铺类型：原来redis中的list，每个元素是一个json；现在内存快照中序列化好的json数组
+    private List<String> typeList;
+    private byte[] typeJson;
+
+    @Setup
+    public void setup() throws IOException {
+        Shop shop = new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        shopBytes = codec.encode(shop, Long.MAX_VALUE);
+        List<ShopType> types = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            types.add(new ShopType().setId((long) i).setName("类型" + i).setIcon("/types/icon" + i + ".png").setSort(i)
+                    .setCreateTime(LocalDateTime.of(2021, 12, 22, 20, 17, 47)).setUpdateTime(LocalDateTime.of(2021, 12, 23, 11, 24, 31)));
+        }
+        typeList = types.stream().map(JSONUtil::toJsonStr).collect(Collectors.toList());
+        typeJson = objectMapper.writeValueAsBytes(types);
+    }
+
+    @Benchmark
+    public long shopDecodeAndSerialize() throws IOException {
+        Shop shop = codec.decode(shopBytes, Shop.class).getValue();
+        objectMapper.writeValue(out, Result.ok(shop));
+        return out.count;
+    }
+
+    @Benchmark
+    public long shopRawJson() throws IOException {
+        RawJson json = codec.readJson(shopBytes);
+        ResultWriter.writeOk(out, json.getBytes(), json.getOffset(), json.getLength());
+        return out.count;
+    }
+
+    @Benchmark
+    public long typesDecodeAndSerialize() throws IOException {
+        List<ShopType> types = typeList.stream().map(type -> JSONUtil.toBean(type, ShopType.class))
+                .sorted((o1, o2) -> o1.getSort() - o2.getSort())
+                .collect(Collectors.toList());
+        objectMapper.writeValue(out, Result.ok(types));
+        return out.count;
+    }
+
+    @Benchmark
+    public long typesRawJson() throws IOException {
+        ResultWriter.writeOk(out, typeJson, 0, typeJson.length);
+        return out.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        //Jackson写完后会关闭输出流，这里忽略
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResultWriteBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
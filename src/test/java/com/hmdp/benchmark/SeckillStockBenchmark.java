@@ -0,0 +1,118 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.service.impl.VoucherOrderServiceImpl;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.SeckillSoldOutCache;
+import com.hmdp.utils.UserHolder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_SEGMENTS_KEY;
+
+/**
+ * 秒杀库存分段基准测试：32个线程不断用不同的用户秒杀同一个优惠券，对比库存不分段和分成4、8段时的吞吐量
+ * 不分段时所有请求都在库存key所在的一个分片上排队；分段后每个分段使用不同分区的hash tag，请求分散到多个分片。
+ * 需要redis集群，主节点数量不少于分段数量才能看到差别，单机redis上所有分段仍然在同一个线程中执行；
+ * 库存足够大，测试过程中不会售罄；订单消息写入队列后不消费，结束时删除订单队列，需要使用单独的redis集群
+ * 运行：mvn test-compile 后执行 main 方法，集群节点通过 -Dredis.nodes=host1:port1,host2:port2 -Dredis.password 指定
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(32)
+@Fork(1)
+public class SeckillStockBenchmark {
+
+    //订单队列分区数量，分段数量不超过它时每个分段位于不同的slot
+    private static final int PARTITIONS = 8;
+    private static final long VOUCHER_ID = 900_000_001L;
+    private static final long STOCK = 1_000_000_000L;
+
+    @Param({"1", "4", "8"})
+    private int segments;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private VoucherOrderServiceImpl voucherOrderService;
+    private final AtomicLong userId = new AtomicLong(9_000_000_000L);
+    private final AtomicLong orderId = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        RedisClusterConfiguration configuration = new RedisClusterConfiguration(
+                Arrays.asList(System.getProperty("redis.nodes", "192.168.100.128:7001").split(",")));
+        configuration.setPassword(System.getProperty("redis.password", "123456"));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        //1、写入库存，分段时每段的库存相同
+        stringRedisTemplate.delete(keys());
+        if (segments <= 1) {
+            stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(VOUCHER_ID, PARTITIONS), String.valueOf(STOCK));
+        } else {
+            for (int i = 0; i < segments; i++) {
+                stringRedisTemplate.opsForValue().set(SeckillKeys.segmentStockKey(VOUCHER_ID, i, PARTITIONS), String.valueOf(STOCK / segments));
+            }
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_SEGMENTS_KEY + VOUCHER_ID, String.valueOf(segments));
+        }
+        //2、不启动订单消费者，只执行秒杀请求的部分
+        voucherOrderService = new VoucherOrderServiceImpl();
+        ReflectionTestUtils.setField(voucherOrderService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(voucherOrderService, "idGenerator", (IdGenerator) prefix -> orderId.incrementAndGet());
+        ReflectionTestUtils.setField(voucherOrderService, "seckillSoldOutCache", new SeckillSoldOutCache(stringRedisTemplate, null));
+        ReflectionTestUtils.setField(voucherOrderService, "partitions", PARTITIONS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        stringRedisTemplate.delete(keys());
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public Object seckill() throws InterruptedException {
+        UserDTO user = new UserDTO();
+        user.setId(userId.incrementAndGet());
+        UserHolder.saveUser(user);
+        try {
+            return voucherOrderService.secKillVoucher(VOUCHER_ID).getData();
+        } finally {
+            UserHolder.removeUser();
+        }
+    }
+
+    private List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        keys.add(SeckillKeys.stockKey(VOUCHER_ID, PARTITIONS));
+        keys.add(SeckillKeys.orderKey(VOUCHER_ID, PARTITIONS));
+        keys.add(SECKILL_STOCK_SEGMENTS_KEY + VOUCHER_ID);
+        for (int i = 0; i < 8; i++) {
+            keys.add(SeckillKeys.segmentStockKey(VOUCHER_ID, i, PARTITIONS));
+            keys.add(SeckillKeys.segmentOrderKey(VOUCHER_ID, i, PARTITIONS));
+        }
+        for (int i = 0; i < PARTITIONS; i++) {
+            keys.add(SeckillKeys.streamKey(i));
+        }
+        return keys;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SeckillStockBenchmark.class.getSimpleName()).build()).run();
+    }
+}
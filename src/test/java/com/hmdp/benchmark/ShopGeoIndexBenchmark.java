@@ -0,0 +1,174 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.GeoGridIndex;
+import io.lettuce.core.GeoArgs;
+import io.lettuce.core.GeoSearch;
+import io.lettuce.core.GeoWithin;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+
+/**
+ * 附近商铺查询基准测试：10万个商铺随机分布在杭州市区约50公里见方的范围内，查询5公里内最近的商铺
+ * 本地索引还测试按附加属性筛选（保留约1/4的商铺）和按属性排序，属性是随机数；
+ * 本地网格索引不需要外部依赖；redis GEOSEARCH 需要可用的redis，地址通过 -Dredis.uri 指定，默认 redis://127.0.0.1:6379
+ * 运行：mvn test-compile 后执行 main 方法，只测本地索引时加参数 index
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShopGeoIndexBenchmark {
+
+    private static final int SHOPS = 100_000;
+    private static final double MIN_X = 119.95, MIN_Y = 30.05, SPAN = 0.5;
+    private static final double RADIUS = 5000;
+    //随机查询的坐标数量
+    private static final int QUERIES = 1024;
+    //低两位都是0的商铺通过筛选，排序值取高位，越大越靠前
+    private static final LongPredicate FILTER = attrs -> (attrs & 3) == 0;
+    private static final LongToIntFunction RANK = attrs -> -(int) (attrs >>> 44);
+
+    //商铺坐标和查询坐标，两种实现使用相同的数据
+    @State(Scope.Benchmark)
+    public static class Data {
+        final double[] xs = new double[SHOPS];
+        final double[] ys = new double[SHOPS];
+        final long[] attrs = new long[SHOPS];
+        final double[] queryXs = new double[QUERIES];
+        final double[] queryYs = new double[QUERIES];
+
+        @Setup
+        public void setup() {
+            Random random = new Random(42);
+            for (int i = 0; i < SHOPS; i++) {
+                xs[i] = MIN_X + random.nextDouble() * SPAN;
+                ys[i] = MIN_Y + random.nextDouble() * SPAN;
+                attrs[i] = random.nextLong();
+            }
+            for (int i = 0; i < QUERIES; i++) {
+                queryXs[i] = MIN_X + random.nextDouble() * SPAN;
+                queryYs[i] = MIN_Y + random.nextDouble() * SPAN;
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Index {
+        GeoGridIndex index;
+
+        @Setup
+        public void setup(Data data) {
+            index = new GeoGridIndex(0.01);
+            long[] ids = new long[SHOPS];
+            for (int i = 0; i < SHOPS; i++) {
+                ids[i] = i + 1;
+            }
+            index.load(ids, data.xs, data.ys, data.attrs, SHOPS);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Redis {
+        static final String KEY = "benchmark:shop:geo";
+        RedisClient client;
+        StatefulRedisConnection<String, String> connection;
+        RedisCommands<String, String> commands;
+
+        @Setup
+        public void setup(Data data) {
+            client = RedisClient.create(System.getProperty("redis.uri", "redis://127.0.0.1:6379"));
+            connection = client.connect();
+            commands = connection.sync();
+            commands.del(KEY);
+            List<Object> batch = new ArrayList<>();
+            for (int i = 0; i < SHOPS; i++) {
+                batch.add(data.xs[i]);
+                batch.add(data.ys[i]);
+                batch.add(String.valueOf(i + 1));
+                if (batch.size() == 3000 || i == SHOPS - 1) {
+                    commands.geoadd(KEY, batch.toArray());
+                    batch.clear();
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            commands.del(KEY);
+            connection.close();
+            client.shutdown();
+        }
+    }
+
+    //每个线程轮流使用不同的查询坐标
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int next() {
+            return next++ & (QUERIES - 1);
+        }
+    }
+
+    @Benchmark
+    public int indexFirstPage(Data data, Index index, Cursor cursor) {
+        int i = cursor.next();
+        return index.index.search(data.queryXs[i], data.queryYs[i], RADIUS, -1, Long.MIN_VALUE, 6).size();
+    }
+
+    @Benchmark
+    public int indexTop100(Data data, Index index, Cursor cursor) {
+        int i = cursor.next();
+        return index.index.search(data.queryXs[i], data.queryYs[i], RADIUS, -1, Long.MIN_VALUE, 100).size();
+    }
+
+    @Benchmark
+    public int indexFilteredFirstPage(Data data, Index index, Cursor cursor) {
+        int i = cursor.next();
+        return index.index.search(data.queryXs[i], data.queryYs[i], RADIUS, FILTER, null, Double.NEGATIVE_INFINITY, Long.MIN_VALUE, 6).size();
+    }
+
+    @Benchmark
+    public int indexRankedFirstPage(Data data, Index index, Cursor cursor) {
+        int i = cursor.next();
+        return index.index.search(data.queryXs[i], data.queryYs[i], RADIUS, FILTER, RANK, Double.NEGATIVE_INFINITY, Long.MIN_VALUE, 6).size();
+    }
+
+    @Benchmark
+    public int redisFirstPage(Data data, Redis redis, Cursor cursor) {
+        return redisSearch(data, redis, cursor, 6);
+    }
+
+    @Benchmark
+    public int redisTop100(Data data, Redis redis, Cursor cursor) {
+        return redisSearch(data, redis, cursor, 100);
+    }
+
+    private static int redisSearch(Data data, Redis redis, Cursor cursor, int limit) {
+        int i = cursor.next();
+        List<GeoWithin<String>> results = redis.commands.geosearch(Redis.KEY,
+                GeoSearch.fromCoordinates(data.queryXs[i], data.queryYs[i]), GeoSearch.byRadius(RADIUS, GeoArgs.Unit.m),
+                new GeoArgs().withDistance().withCount(limit).asc());
+        return results.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 && "index".equals(args[0])
+                ? ShopGeoIndexBenchmark.class.getSimpleName() + ".index"
+                : ShopGeoIndexBenchmark.class.getSimpleName();
+        new Runner(new OptionsBuilder().include(include).build()).run();
+    }
+}
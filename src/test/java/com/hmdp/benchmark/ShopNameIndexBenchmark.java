@@ -0,0 +1,88 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.NgramIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按名称查询商铺基准测试：商铺名称由常用字随机组成，关键字取某个商铺名称中间的两个字，返回相关度最高的10个商铺
+ * 对比n-gram索引和逐个判断名称是否包含关键字（相当于数据库 like '%关键字%' 的全表扫描），商铺数量分别为1万和10万
+ * 运行：mvn test-compile 后执行 main 方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShopNameIndexBenchmark {
+
+    private static final String CHARS = "茶餐厅火锅烤肉咖啡面包甜品日料寿司小龙虾酒吧足疗美发健身奶茶烧烤串串麻辣烫海鲜自助"
+            + "老北京川湘粤菜馆小吃快餐披萨汉堡炸鸡牛排西餐厨房面馆饺子馄饨粥铺米线酸菜鱼烤鱼羊蝎子"
+            + "东西南北中新大小金银红绿天地人和福禄寿喜春夏秋冬山水云月花园家庄味道香源记坊阁楼轩";
+    private static final String[] AREAS = {"拱墅区", "西湖区", "上城区", "滨江区", "萧山区", "余杭区"};
+    //随机查询的关键字数量
+    private static final int QUERIES = 1024;
+    private static final int LIMIT = 10;
+
+    @Param({"10000", "100000"})
+    private int shops;
+
+    private String[] names;
+    private String[] keywords;
+    private NgramIndex index;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        long[] ids = new long[shops];
+        names = new String[shops];
+        String[] areas = new String[shops];
+        for (int i = 0; i < shops; i++) {
+            ids[i] = i + 1;
+            StringBuilder name = new StringBuilder();
+            int length = 3 + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                name.append(CHARS.charAt(random.nextInt(CHARS.length())));
+            }
+            names[i] = name.toString();
+            areas[i] = AREAS[random.nextInt(AREAS.length)];
+        }
+        keywords = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String name = names[random.nextInt(shops)];
+            int start = random.nextInt(name.length() - 1);
+            keywords[i] = name.substring(start, start + 2);
+        }
+        index = new NgramIndex();
+        index.load(ids, names, areas, shops);
+    }
+
+    @Benchmark
+    public int index() {
+        return index.search(keywords[next++ & (QUERIES - 1)], -1, Long.MIN_VALUE, LIMIT).size();
+    }
+
+    //逐个商铺判断，找到前LIMIT个就停止，和 like 加 limit 一样，但没有相关度排序
+    @Benchmark
+    public int scan() {
+        String keyword = keywords[next++ & (QUERIES - 1)];
+        int found = 0;
+        for (int i = 0; i < names.length && found < LIMIT; i++) {
+            if (names[i].contains(keyword)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ShopNameIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,61 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BinaryCacheCodecTest {
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(Jackson2ObjectMapperBuilder.json()
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build());
+
+    //按字段编码的对象
+    @Test
+    void testBeanRoundTrip() {
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        shop.setX(120.149192);
+        shop.setScore(37);
+        shop.setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39));
+        byte[] bytes = codec.encode(shop, 1000L);
+        CacheValue<Shop> value = codec.decode(bytes, Shop.class);
+        assertEquals(shop, value.getValue());
+        assertEquals(1000L, value.getExpireMillis());
+        //按字段编码的数据没有json
+        assertNull(codec.readJson(bytes));
+    }
+
+    //字符串、数字、布尔值、集合没有可以按字段编码的属性，使用json
+    @Test
+    void testValueRoundTrip() {
+        assertRoundTrip("hello", String.class, "\"hello\"");
+        assertRoundTrip("a\"b", String.class, "\"a\\\"b\"");
+        assertRoundTrip(42L, Long.class, "42");
+        assertRoundTrip(7, Integer.class, "7");
+        assertRoundTrip(1.5, Double.class, "1.5");
+        assertRoundTrip(true, Boolean.class, "true");
+        assertRoundTrip(Arrays.asList(1, 2), List.class, "[1,2]");
+        assertRoundTrip(Collections.singletonMap("a", 1), Map.class, "{\"a\":1}");
+    }
+
+    private <R> void assertRoundTrip(R value, Class<R> type, String json) {
+        byte[] bytes = codec.encode(value, 0);
+        assertEquals(value, codec.decode(bytes, type).getValue());
+        RawJson raw = codec.readJson(bytes);
+        assertEquals(json, new String(raw.getBytes(), raw.getOffset(), raw.getLength(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GeoGridIndexTest {
+
+    private static final int POINTS = 5000;
+    private static final int PAGE = 7;
+
+    private final Random random = new Random(42);
+    private final long[] ids = new long[POINTS];
+    private final double[] xs = new double[POINTS];
+    private final double[] ys = new double[POINTS];
+    private final long[] attrs = new long[POINTS];
+
+    //按距离排序：逐页用最后一个结果作为游标，拼起来和暴力计算的结果相同
+    @Test
+    void testCursorPagingByDistance() {
+        GeoGridIndex index = load();
+        for (int i = 0; i < 20; i++) {
+            double x = 120.1 + random.nextDouble() * 0.1, y = 30.2 + random.nextDouble() * 0.1;
+            double radius = 500 + random.nextInt(5000);
+            assertEquals(bruteForce(x, y, radius, null, null), page(index, x, y, radius, null, null));
+        }
+    }
+
+    //按属性过滤和排序：(属性排序值, 距离, id)
+    @Test
+    void testCursorPagingByRank() {
+        GeoGridIndex index = load();
+        LongPredicate filter = attr -> attr % 3 != 0;
+        LongToIntFunction rank = attr -> (int) -attr;
+        for (int i = 0; i < 20; i++) {
+            double x = 120.1 + random.nextDouble() * 0.1, y = 30.2 + random.nextDouble() * 0.1;
+            double radius = 500 + random.nextInt(5000);
+            assertEquals(bruteForce(x, y, radius, filter, rank), page(index, x, y, radius, filter, rank));
+        }
+    }
+
+    //坐标只有少数几个取值，制造大量距离相同的点，验证游标按id区分
+    private GeoGridIndex load() {
+        for (int i = 0; i < POINTS; i++) {
+            ids[i] = i + 1;
+            xs[i] = 120.1 + random.nextInt(200) * 0.0005;
+            ys[i] = 30.2 + random.nextInt(200) * 0.0005;
+            attrs[i] = random.nextInt(5);
+        }
+        GeoGridIndex index = new GeoGridIndex(0.01);
+        index.load(ids, xs, ys, attrs, POINTS);
+        return index;
+    }
+
+    private List<Long> page(GeoGridIndex index, double x, double y, double radius, LongPredicate filter, LongToIntFunction rank) {
+        List<Long> result = new ArrayList<>();
+        double afterKey = Double.NEGATIVE_INFINITY;
+        long afterId = Long.MIN_VALUE;
+        while (true) {
+            GeoGridIndex.Hits hits = index.search(x, y, radius, filter, rank, afterKey, afterId, PAGE);
+            for (int i = 0; i < hits.size(); i++) {
+                result.add(hits.id(i));
+            }
+            if (hits.size() < PAGE) {
+                return result;
+            }
+            afterKey = hits.key(hits.size() - 1);
+            afterId = hits.id(hits.size() - 1);
+        }
+    }
+
+    private List<Long> bruteForce(double x, double y, double radius, LongPredicate filter, LongToIntFunction rank) {
+        List<double[]> matched = new ArrayList<>();
+        for (int i = 0; i < POINTS; i++) {
+            double distance = GeoGridIndex.distance(x, y, xs[i], ys[i]);
+            if (distance > radius || (filter != null && !filter.test(attrs[i]))) {
+                continue;
+            }
+            double order = rank == null ? 0 : rank.applyAsInt(attrs[i]);
+            matched.add(new double[]{order, distance, ids[i]});
+        }
+        matched.sort(Comparator.<double[]>comparingDouble(p -> p[0])
+                .thenComparingDouble(p -> p[1])
+                .thenComparingDouble(p -> p[2]));
+        List<Long> result = new ArrayList<>();
+        matched.forEach(p -> result.add((long) p[2]));
+        return result;
+    }
+}
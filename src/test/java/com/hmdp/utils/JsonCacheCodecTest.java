@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.RedisData;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonCacheCodecTest {
+
+    //和Spring Boot的配置一致：application.yaml中忽略null属性，时间输出为字符串
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+    private final JsonCacheCodec codec = new JsonCacheCodec(objectMapper);
+    //2022-01-01 00:00:00 UTC
+    private static final long EXPIRE_MILLIS = 1640995200000L;
+
+    //缓存中的json直接写入Result，和原来Jackson序列化Result.ok(shop)的输出相同
+    @Test
+    void testRawJsonMatchesJackson() throws IOException {
+        Shop shop = shop();
+        byte[] bytes = codec.encode(shop, 1000L);
+        RawJson raw = codec.readJson(bytes);
+        assertEquals(1000L, raw.getExpireMillis());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResultWriter.writeOk(out, raw.getBytes(), raw.getOffset(), raw.getLength());
+        String body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(objectMapper.writeValueAsString(Result.ok(shop)), body);
+        assertTrue(body.contains("\"createTime\":\"2021-12-22T18:10:39\""));
+        //解码后和原对象相同
+        CacheValue<Shop> value = codec.decode(bytes, Shop.class);
+        assertEquals(shop, value.getValue());
+        assertEquals(1000L, value.getExpireMillis());
+        assertEquals(1000L, codec.readExpireMillis(bytes));
+    }
+
+    //旧版本Hutool写入的数据时间是毫秒数，可以解码但不能直接写入响应
+    @Test
+    void testLegacyHutoolData() {
+        Shop shop = shop();
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(EXPIRE_MILLIS), ZoneId.systemDefault()));
+        byte[] bytes = JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+        assertNull(codec.readJson(bytes));
+        CacheValue<Shop> value = codec.decode(bytes, Shop.class);
+        assertEquals(shop, value.getValue());
+        assertEquals(EXPIRE_MILLIS, value.getExpireMillis());
+        assertEquals(EXPIRE_MILLIS, codec.readExpireMillis(bytes));
+        //没有逻辑过期时间的对象
+        bytes = JSONUtil.toJsonStr(shop).getBytes(StandardCharsets.UTF_8);
+        assertEquals(shop, codec.decode(bytes, Shop.class).getValue());
+        assertEquals(0L, codec.readExpireMillis(bytes));
+    }
+
+    private static Shop shop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
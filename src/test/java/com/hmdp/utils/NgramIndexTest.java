@@ -0,0 +1,115 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NgramIndexTest {
+
+    private static final String CHARS = "茶餐厅火锅烤肉咖啡面包甜品日料寿司";
+
+    //名称完全相同、名称前缀（短的在前）、名称中间（位置靠前的在前）、商圈匹配
+    @Test
+    void testRanking() {
+        NgramIndex index = new NgramIndex();
+        index.put(1, "老火锅店", "拱墅区");
+        index.put(2, "火锅", "西湖区");
+        index.put(3, "火锅烤肉自助", "西湖区");
+        index.put(4, "重庆老火锅", "西湖区");
+        index.put(5, "火锅城", "上城区");
+        index.put(6, "茶餐厅", "火锅街");
+        index.put(7, "咖啡", "西湖区");
+        assertEquals(Arrays.asList(2L, 5L, 3L, 1L, 4L, 6L), ids(index.search("火锅", -1, Long.MIN_VALUE, 10)));
+        //全角和大小写、空白规范化后匹配
+        index.put(8, "ＫＦＣ 西湖店", "西湖区");
+        assertEquals(Arrays.asList(8L), ids(index.search("kfc西湖", -1, Long.MIN_VALUE, 10)));
+    }
+
+    //单个字符只匹配名称前缀
+    @Test
+    void testSingleCharPrefixOnly() {
+        NgramIndex index = new NgramIndex();
+        index.put(1, "老火锅店", "拱墅区");
+        index.put(2, "火", "西湖区");
+        index.put(3, "火锅烤肉", "西湖区");
+        index.put(4, "火锅", "火锅街");
+        assertEquals(Arrays.asList(2L, 4L, 3L), ids(index.search("火", -1, Long.MIN_VALUE, 10)));
+    }
+
+    //修改名称和删除后前缀列表和2-gram列表同步更新
+    @Test
+    void testPutAndRemove() {
+        NgramIndex index = new NgramIndex();
+        index.put(1, "火锅", "西湖区");
+        index.put(2, "火锅城", "西湖区");
+        index.put(1, "烤肉火锅", "西湖区");
+        assertEquals(Arrays.asList(2L, 1L), ids(index.search("火锅", -1, Long.MIN_VALUE, 10)));
+        assertEquals(Arrays.asList(1L), ids(index.search("烤", -1, Long.MIN_VALUE, 10)));
+        index.remove(2);
+        assertEquals(Arrays.asList(1L), ids(index.search("火锅", -1, Long.MIN_VALUE, 10)));
+        assertEquals(0, index.search("火", -1, Long.MIN_VALUE, 10).size());
+    }
+
+    //逐页用最后一条作为游标，拼起来和一次查询全部的结果相同
+    @Test
+    void testCursorContinuation() {
+        Random random = new Random(42);
+        int size = 3000;
+        long[] ids = new long[size];
+        String[] names = new String[size];
+        String[] areas = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i + 1;
+            names[i] = randomText(random, 2 + random.nextInt(5));
+            areas[i] = randomText(random, 3);
+        }
+        NgramIndex loaded = new NgramIndex();
+        loaded.load(ids, names, areas, size);
+        NgramIndex incremental = new NgramIndex();
+        for (int i = 0; i < size; i++) {
+            incremental.put(ids[i], names[i], areas[i]);
+        }
+        for (int i = 0; i < 50; i++) {
+            String keyword = randomText(random, 1 + random.nextInt(2));
+            List<Long> all = ids(loaded.search(keyword, -1, Long.MIN_VALUE, size));
+            assertEquals(all, page(loaded, keyword, 3));
+            assertEquals(all, page(incremental, keyword, 7));
+        }
+    }
+
+    private static List<Long> page(NgramIndex index, String keyword, int limit) {
+        List<Long> result = new ArrayList<>();
+        double afterKey = -1;
+        long afterId = Long.MIN_VALUE;
+        while (true) {
+            NgramIndex.Hits hits = index.search(keyword, afterKey, afterId, limit);
+            result.addAll(ids(hits));
+            if (hits.size() < limit) {
+                return result;
+            }
+            afterKey = hits.key(hits.size() - 1);
+            afterId = hits.id(hits.size() - 1);
+        }
+    }
+
+    private static List<Long> ids(NgramIndex.Hits hits) {
+        List<Long> ids = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            ids.add(hits.id(i));
+        }
+        return ids;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return text.toString();
+    }
+}